@@ -20,35 +20,53 @@ package au.com.grieve.portalnetwork;
 
 import au.com.grieve.portalnetwork.config.PortalConfig;
 import au.com.grieve.portalnetwork.config.RecipeConfig;
+import au.com.grieve.portalnetwork.config.StorageConfig;
+import au.com.grieve.portalnetwork.config.TransitConfig;
 import au.com.grieve.portalnetwork.exceptions.InvalidPortalException;
+import au.com.grieve.portalnetwork.index.AddressDirectory;
+import au.com.grieve.portalnetwork.index.BlockKey;
+import au.com.grieve.portalnetwork.index.WorldPortalIndex;
 import au.com.grieve.portalnetwork.portals.BasePortal;
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+import au.com.grieve.portalnetwork.storage.PortalChanges;
+import au.com.grieve.portalnetwork.storage.PortalData;
+import au.com.grieve.portalnetwork.storage.PortalKey;
+import au.com.grieve.portalnetwork.storage.PortalSaver;
+import au.com.grieve.portalnetwork.storage.PortalStore;
+import au.com.grieve.portalnetwork.storage.PortalStores;
+import au.com.grieve.portalnetwork.storage.YamlPortalFile;
+import au.com.grieve.portalnetwork.transit.ChunkTickets;
+import au.com.grieve.portalnetwork.transit.TransitScheduler;
+import au.com.grieve.portalnetwork.utils.LongObjectHashMap;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import lombok.Getter;
 import lombok.NonNull;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.InvalidConfigurationException;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.World;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.ShapedRecipe;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.BlockVector;
-import org.bukkit.util.Vector;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class PortalManager {
+    // Most blocks checked along a single move
+    public static final int MAX_CROSSED = 128;
+
     @Getter
     private final BiMap<String, Class<? extends BasePortal>> portalClasses = HashBiMap.create();
 
@@ -60,15 +78,80 @@ public class PortalManager {
     @Getter
     private final List<BasePortal> portals = new ArrayList<>();
 
-    // Location Maps
-    private final Hashtable<BlockVector, BasePortal> indexFrames = new Hashtable<>();
-    private final Hashtable<BlockVector, BasePortal> indexPortals = new Hashtable<>();
-    private final Hashtable<BlockVector, BasePortal> indexBases = new Hashtable<>();
-    private final Hashtable<BlockVector, BasePortal> indexPortalBlocks = new Hashtable<>();
+    // Location Index per loaded World
+    private final Map<UUID, WorldPortalIndex<BasePortal>> worldIndexes = new HashMap<>();
+
+    // Network/Address Index. Holds the portal at each address, or the key of a stored portal not created yet.
+    private final AddressDirectory<Object> directory = new AddressDirectory<>(BasePortal.NETWORKS, BasePortal.ADDRESSES);
+
+    // Stored portals waiting for their chunk to load, per world by chunk
+    private final Map<UUID, LongObjectHashMap<List<PortalData>>> pending = new HashMap<>();
+
+    // Stored portals whose chunk is loaded, waiting to be created
+    private final Deque<PortalData> loadQueue = new ArrayDeque<>();
+    private BukkitTask loadTask;
+
+    // Portals currently dialled to another portal
+    private final Set<BasePortal> activePortals = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Chunk tickets on the destinations of dialled portals
+    @Getter
+    private final ChunkTickets tickets;
+
+    // Work left over from teleports
+    @Getter
+    private final TransitScheduler scheduler;
+
+    // Portals waiting for the portal they were dialled to
+    private final Map<BasePortal, Integer> pendingDials = new IdentityHashMap<>();
+
+    // Stored portals whose chunk is held loaded so dials waiting for them can complete
+    private final Set<PortalKey> loading = new HashSet<>();
+
+    // Set once stored portal data has been read and registered. Saves are held back until then.
+    @Getter
+    private boolean loaded;
+    private boolean saveOnLoad;
+    private volatile boolean migrated;
+
+    // Set when stored portals are read from a lazy store as their chunks load
+    private boolean lazy;
+
+    // Progress of creating the portals that were ready at startup
+    private int startupQueued;
+    private int startupCreated;
+    private int startupTicks;
+    private long startupCreateNanos;
+    private long startupLogged;
+
+    // Persistence
+    @Getter
+    private final String storageType;
+    private final StorageConfig storageConfig;
+    private final PortalStore store;
+    private final PortalSaver saver;
+
+    // What has been written to the store. Only used on the saver thread once loaded.
+    private Map<PortalKey, PortalData> written = new HashMap<>();
 
     // Configuration
     public PortalManager(JavaPlugin plugin) {
         this.plugin = plugin;
+
+        this.storageConfig = PortalNetwork.getInstance().getConfiguration().getStorage();
+        if (PortalStores.TYPES.contains(storageConfig.getType().toLowerCase())) {
+            this.storageType = storageConfig.getType().toLowerCase();
+        } else {
+            plugin.getLogger().warning("Unknown storage type '" + storageConfig.getType() + "'. Using '" + PortalStores.FILE + "'");
+            this.storageType = PortalStores.FILE;
+        }
+
+        this.store = PortalStores.create(storageType, plugin.getDataFolder(), storageConfig);
+        this.saver = new PortalSaver(plugin, this::snapshot, this::write);
+
+        TransitConfig transitConfig = PortalNetwork.getInstance().getConfiguration().getTransit();
+        this.tickets = new ChunkTickets(plugin, this, transitConfig.isChunkTickets(), transitConfig.getPreloadRadius());
+        this.scheduler = new TransitScheduler(plugin);
     }
 
     /**
@@ -104,67 +187,550 @@ public class PortalManager {
         }
     }
 
-    public void load() {
-        // Portal Data
-        YamlConfiguration portalConfig = new YamlConfiguration();
+    /**
+     * Read stored portal data in the background then register it on the main thread
+     *
+     * @return completed on the main thread once portal data is registered
+     */
+    public CompletableFuture<Void> load() {
+        // Index all loaded worlds
+        for (World world : plugin.getServer().getWorlds()) {
+            worldIndexes.putIfAbsent(world.getUID(), new WorldPortalIndex<>(BasePortal::isValid));
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            PortalStore source = findSource();
+
+            // Lazy stores only read the portals holding an address now and the rest as their chunks load
+            if (source == store && store.isLazy()) {
+                List<PortalData> data = readAddresses();
+                long readNanos = System.nanoTime() - start;
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    registerAddresses(data, readNanos);
+                    result.complete(null);
+                });
+                return;
+            }
+
+            // Files from older versions look up worlds by name, which must be done on the main thread
+            if (source != null && source.needsMainThread()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    register(readData(source), System.nanoTime() - start);
+                    result.complete(null);
+                });
+                return;
+            }
+
+            List<PortalData> data = readData(source);
+            long readNanos = System.nanoTime() - start;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                register(data, readNanos);
+                result.complete(null);
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Register stored portal data in one batch. Portals are created once their chunk is loaded.
+     */
+    private void register(List<PortalData> data, long readNanos) {
+        long start = System.nanoTime();
+        for (PortalData portalData : data) {
+            queue(portalData);
+        }
+        long registerNanos = System.nanoTime() - start;
+
+        loaded = true;
+        if (saveOnLoad || migrated) {
+            save();
+        }
+
+        startupQueued = loadQueue.size();
+        startupLogged = System.nanoTime();
+        plugin.getLogger().info(String.format("Read %d portals in %d ms and registered them in %d ms. "
+                        + "%d are in loaded chunks, the rest will be created as their chunks load",
+                data.size(), readNanos / 1000000, registerNanos / 1000000, startupQueued));
+    }
+
+    /**
+     * Reserve the addresses of the portals in a lazy store then read the portals near chunks that are already loaded
+     */
+    private void registerAddresses(List<PortalData> data, long readNanos) {
+        data.forEach(this::reserve);
+
+        lazy = true;
+        loaded = true;
+        if (saveOnLoad) {
+            save();
+        }
+
+        plugin.getLogger().info(String.format("Read the addresses of %d portals in %d ms. "
+                + "Portals will be read and created as their chunks load", data.size(), readNanos / 1000000));
+
+        for (World world : plugin.getServer().getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                readChunk(world.getUID(), chunk.getX(), chunk.getZ());
+            }
+        }
+    }
+
+    /**
+     * Read the stored portals near a chunk from a lazy store in the background then register them, unless they were
+     * already read
+     */
+    private void readChunk(UUID world, int chunkX, int chunkZ) {
+        if (!lazy || !store.markRead(world, chunkX, chunkZ)) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<PortalData> data;
+            try {
+                data = store.loadChunk(world, chunkX, chunkZ);
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to load portals from '" + store.getName()
+                        + "'. Ignoring but portal data may be lost", e);
+                return;
+            }
+
+            if (!data.isEmpty() && plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> registerChunk(data));
+            }
+        });
+    }
+
+    /**
+     * Register stored portals read from a lazy store
+     */
+    private void registerChunk(List<PortalData> data) {
+        // Record them as written on the saver thread, after any write of a snapshot taken before they were registered
+        saver.execute(() -> data.forEach(portal -> written.put(portal.getKey(), portal)));
+
+        for (PortalData portalData : data) {
+            // A portal may have been built here while the data was read
+            Location location = portalData.getLocation();
+            if (location == null || getPortal(location) == null) {
+                queue(portalData);
+            }
+        }
+    }
+
+    /**
+     * Queue stored portal data to be created, deferring it until its chunk is loaded
+     */
+    private void queue(PortalData data) {
+        reserve(data);
+
+        World world = plugin.getServer().getWorld(data.getWorld());
+        if (world == null || !world.isChunkLoaded(data.getX() >> 4, data.getZ() >> 4)) {
+            park(data);
+            return;
+        }
+
+        enqueue(data);
+    }
+
+    /**
+     * Hold the address of a stored portal until it is created so no other portal can take it
+     */
+    private void reserve(PortalData data) {
+        if (data.isValid() && data.getNetwork() != null && data.getAddress() != null) {
+            directory.claim(data.getKey(), data.getNetwork(), data.getAddress());
+        }
+    }
+
+    /**
+     * Add stored portal data to the queue of portals to create
+     */
+    private void enqueue(PortalData data) {
+        loadQueue.add(data);
+        if (loadTask == null) {
+            loadTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::processLoadQueue, 1L, 1L);
+        }
+    }
+
+    /**
+     * Hold stored portal data until its chunk loads
+     */
+    private void park(PortalData data) {
+        LongObjectHashMap<List<PortalData>> chunks = pending.computeIfAbsent(data.getWorld(), k -> new LongObjectHashMap<>());
+        long key = WorldPortalIndex.chunkKey(data.getX() >> 4, data.getZ() >> 4);
+        List<PortalData> bucket = chunks.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(1);
+            chunks.put(key, bucket);
+        }
+        bucket.add(data);
+    }
+
+    /**
+     * Create queued portals until this tick's budget is spent
+     */
+    private void processLoadQueue() {
+        long deadline = System.nanoTime() + PortalNetwork.getInstance().getConfiguration().getStorage().getLoadBudget() * 1000000L;
+
+        // Always make progress even if the budget is tiny
+        long start = System.nanoTime();
+        int created = 0;
+        do {
+            PortalData data = loadQueue.poll();
+            if (data == null) {
+                break;
+            }
+            loadPortal(data);
+            created++;
+        } while (System.nanoTime() < deadline);
+
+        if (startupCreated < startupQueued) {
+            logStartupProgress(created, System.nanoTime() - start);
+        }
+
+        if (loadQueue.isEmpty()) {
+            loadTask.cancel();
+            loadTask = null;
+        }
+    }
+
+    private void logStartupProgress(int created, long nanos) {
+        startupCreated = Math.min(startupQueued, startupCreated + created);
+        startupCreateNanos += nanos;
+        startupTicks++;
+
+        if (startupCreated == startupQueued) {
+            plugin.getLogger().info(String.format("Created %d portals in %d ms over %d ticks",
+                    startupCreated, startupCreateNanos / 1000000, startupTicks));
+        } else if (System.nanoTime() - startupLogged > 5000000000L) {
+            startupLogged = System.nanoTime();
+            plugin.getLogger().info(String.format("Created %d/%d portals", startupCreated, startupQueued));
+        }
+    }
+
+    /**
+     * Create a stored portal and restore its dial
+     */
+    private void loadPortal(PortalData data) {
+        Location location = data.getLocation();
+        if (location == null) {
+            park(data);
+            return;
+        }
+
+        PortalKey key = data.getKey();
+        directory.release(key);
+        unhold(key);
+
+        // A portal may already have been built here while this one waited
+        if (getPortal(location) != null) {
+            return;
+        }
+
+        BasePortal portal;
         try {
-            portalConfig.load(new File(plugin.getDataFolder(), "portal-data.yml"));
-        } catch (FileNotFoundException ignored) {
-        } catch (IOException | InvalidConfigurationException e) {
-            plugin.getLogger().warning("Failed to load 'portal-data.yml'. Ignoring but portal data may be lost");
+            portal = createPortal(data.getType(), location, data.getGeometry());
+        } catch (InvalidPortalException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // Dial now if the other portal exists, otherwise wait for it to be stored or built
+        if (data.getDialled() != null && portal.isValid() && !portal.dial(data.getDialled())) {
+            pendingDials.put(portal, data.getDialled());
         }
 
-        // Initialize all portals
-        Map<BasePortal, Integer> dialed = new HashMap<>();
+        if (!portal.isValid() || pendingDials.isEmpty()) {
+            return;
+        }
 
-        ConfigurationSection portalsData = portalConfig.getConfigurationSection("portals");
-        if (portalsData != null) {
-            for (String key : portalsData.getKeys(false)) {
-                ConfigurationSection portalData = portalsData.getConfigurationSection(key);
-                if (portalData == null) {
-                    continue;
-                }
+        // Dial any portals that were waiting for this one. Dialling changes the pending dials so find them first.
+        List<BasePortal> waiting = new ArrayList<>();
+        for (Map.Entry<BasePortal, Integer> entry : pendingDials.entrySet()) {
+            BasePortal other = entry.getKey();
+            if (other != portal && entry.getValue().equals(portal.getAddress())
+                    && other.isValid() && Objects.equals(other.getNetwork(), portal.getNetwork())) {
+                waiting.add(other);
+            }
+        }
+
+        for (BasePortal other : waiting) {
+            if (pendingDials.remove(other) != null && other.getDialledPortal() == null) {
+                other.dial(portal, null);
+            }
+        }
+    }
+
+    /**
+     * Queue stored portals in a chunk that has loaded
+     */
+    public void loadChunk(@NonNull Chunk chunk) {
+        UUID worldId = chunk.getWorld().getUID();
+        readChunk(worldId, chunk.getX(), chunk.getZ());
 
-                BasePortal portal;
-                try {
-                    portal = createPortal(portalData.getString("portal_type"), portalData.getLocation("location"));
-                } catch (InvalidPortalException e) {
-                    e.printStackTrace();
-                    continue;
+        LongObjectHashMap<List<PortalData>> chunks = pending.get(worldId);
+        if (chunks == null) {
+            return;
+        }
+
+        List<PortalData> data = chunks.remove(WorldPortalIndex.chunkKey(chunk.getX(), chunk.getZ()));
+        if (chunks.isEmpty()) {
+            pending.remove(worldId);
+        }
+        if (data != null) {
+            data.forEach(this::enqueue);
+        }
+    }
+
+    /**
+     * Return the configured store, or another store to migrate from if it holds no data yet, or null if there is no
+     * portal data at all
+     */
+    private PortalStore findSource() {
+        if (store.exists()) {
+            return store;
+        }
+
+        for (String type : PortalStores.TYPES) {
+            if (type.equals(storageType)) {
+                continue;
+            }
+
+            PortalStore source = PortalStores.create(type, plugin.getDataFolder(), storageConfig);
+            if (source.exists()) {
+                return source;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the portals holding an address from the configured lazy store. Called off the main thread.
+     */
+    private List<PortalData> readAddresses() {
+        try {
+            return store.loadAddresses();
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load '" + store.getName() + "'. Ignoring but portal data may be lost", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Read all portal data from a source found by findSource. Called off the main thread unless the source needs it.
+     */
+    private List<PortalData> readData(PortalStore source) {
+        if (source == null) {
+            return new ArrayList<>();
+        }
+
+        try {
+            List<PortalData> data = source.loadAll();
+            if (source == store) {
+                for (PortalData portal : data) {
+                    written.put(portal.getKey(), portal);
                 }
+            } else {
+                plugin.getLogger().info("Migrating '" + source.getName() + "' to '" + store.getName() + "'");
+                migrated = true;
+            }
+            return data;
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to load '" + source.getName() + "'. Ignoring but portal data may be lost", e);
+            return new ArrayList<>();
+        } finally {
+            if (source != store) {
+                closeQuietly(source);
+            }
+        }
+    }
 
-                if (portalData.contains("dialled")) {
-                    dialed.put(portal, portalData.getInt("dialled"));
+    private void closeQuietly(PortalStore portalStore) {
+        try {
+            portalStore.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to close '" + portalStore.getName() + "'");
+        }
+    }
+
+    /**
+     * Export portal data to a human readable YAML file
+     * <p>
+     * The file is written in the background and the result completes on the main thread.
+     */
+    public CompletableFuture<File> export() {
+        File yamlFile = new File(plugin.getDataFolder(), PortalStores.YAML_FILE);
+
+        // The YAML store already keeps this file up to date once outstanding changes are written
+        if (storageType.equals(PortalStores.YAML)) {
+            return afterSave(() -> yamlFile);
+        }
+
+        return withAllPortals(data -> {
+            YamlPortalFile.write(yamlFile, data);
+            return yamlFile;
+        });
+    }
+
+    /**
+     * Copy the current portal data to another store so the server can be switched over to it
+     * <p>
+     * The copy is made in the background and the result completes on the main thread with the name of where the data
+     * was written.
+     */
+    public CompletableFuture<String> migrate(@NonNull String type) {
+        return withAllPortals(data -> {
+            PortalStore target = PortalStores.create(type, plugin.getDataFolder(), storageConfig);
+            try {
+                Set<PortalKey> stale = new HashSet<>();
+                if (target.exists()) {
+                    for (PortalData portal : target.loadAll()) {
+                        stale.add(portal.getKey());
+                    }
+                }
+                for (PortalData portal : data) {
+                    stale.remove(portal.getKey());
                 }
+
+                target.delete(stale);
+                target.upsert(data);
+                target.flush();
+            } finally {
+                closeQuietly(target);
             }
+            return target.getName();
+        });
+    }
+
+    /**
+     * Run a task with every stored portal on the saver thread, including those a lazy store has not read yet. Called
+     * on the main thread.
+     */
+    private <T> CompletableFuture<T> withAllPortals(PortalTask<T> task) {
+        if (!lazy) {
+            List<PortalData> data = snapshot();
+            return afterSave(() -> task.run(data));
         }
 
-        // Dial Portals
-        for (Map.Entry<BasePortal, Integer> dialedPortal : dialed.entrySet()) {
-            dialedPortal.getKey().dial(dialedPortal.getValue());
+        // Once outstanding changes are written the store holds the current state of every portal
+        return afterSave(() -> task.run(store.loadAll()));
+    }
+
+    /**
+     * Run a task on the saver thread once outstanding changes are written, completing on the main thread
+     */
+    private <T> CompletableFuture<T> afterSave(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean queued = saver.executeAfterSave(() -> {
+            T value = null;
+            Exception error = null;
+            try {
+                value = task.call();
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to copy portal data", e);
+                error = e;
+            }
+
+            if (!plugin.isEnabled()) {
+                return;
+            }
+
+            T finalValue = value;
+            Exception finalError = error;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (finalError != null) {
+                    result.completeExceptionally(finalError);
+                } else {
+                    result.complete(finalValue);
+                }
+            });
+        });
+
+        if (!queued) {
+            result.completeExceptionally(new IOException("Portal data has been closed"));
         }
+        return result;
+    }
+
+    private interface PortalTask<T> {
+        T run(List<PortalData> data) throws IOException;
     }
 
+    /**
+     * Schedule the portal data to be saved in the background
+     */
     public void save() {
-        // Portal Data
-        YamlConfiguration portalConfig = new YamlConfiguration();
-        ConfigurationSection portalsData = portalConfig.createSection("portals");
-        for (int i = 0; i < portals.size(); i++) {
-            BasePortal portal = portals.get(i);
-            ConfigurationSection portalData = portalsData.createSection(Integer.toString(i));
-
-            if (portal.getDialledPortal() != null) {
-                portalData.set("dialled", portal.getDialledPortal().getAddress());
+        if (!loaded) {
+            saveOnLoad = true;
+            return;
+        }
+
+        saver.markDirty(PortalNetwork.getInstance().getConfiguration().getStorage().getSaveInterval());
+    }
+
+    /**
+     * Write any unsaved portal data now
+     */
+    public void flush() {
+        saver.flush();
+    }
+
+    /**
+     * Write any unsaved portal data and stop background saving
+     */
+    public void close() {
+        saver.close();
+        closeQuietly(store);
+    }
+
+    /**
+     * Capture the state of all portals. Called on the main thread.
+     */
+    private List<PortalData> snapshot() {
+        List<PortalData> data = new ArrayList<>(portals.size() + loadQueue.size());
+        for (BasePortal portal : portals) {
+            PortalData portalData = portalData(portal);
+            if (portalData != null) {
+                data.add(portalData);
             }
-            portalData.set("portal_type", portalClasses.inverse().get(portal.getClass()));
-            portalData.set("location", portal.getLocation());
-            portalData.set("valid", portal.isValid());
+        }
+
+        // Stored portals not created yet
+        data.addAll(loadQueue);
+        for (LongObjectHashMap<List<PortalData>> chunks : pending.values()) {
+            chunks.forEach((key, bucket) -> data.addAll(bucket));
+        }
+        return data;
+    }
+
+    /**
+     * Capture the state of a portal, keeping a dial that is waiting for the other portal to load
+     */
+    private PortalData portalData(BasePortal portal) {
+        PortalData data = PortalData.of(portalClasses.inverse().get(portal.getClass()), portal);
+        Integer dialled = pendingDials.get(portal);
+        if (data != null && dialled != null && portal.getDialledPortal() == null) {
+            data = data.withDialled(dialled);
+        }
+        return data;
+    }
+
+    /**
+     * Write the portals that changed since the last write. Called on the saver thread.
+     */
+    private void write(List<PortalData> data) {
+        PortalChanges changes = PortalChanges.between(written, data);
+        if (changes.isEmpty()) {
+            return;
         }
 
         try {
-            portalConfig.save(new File(plugin.getDataFolder(), "portal-data.yml"));
+            store.delete(changes.getDeletes());
+            store.upsert(changes.getUpserts());
+            store.flush();
+            written = changes.getCurrent();
         } catch (IOException e) {
-            plugin.getLogger().warning("Failed to save 'portal-data.yml'. Ignoring but portal data may be lost");
+            plugin.getLogger().warning("Failed to save '" + store.getName() + "'. Ignoring but portal data may be lost");
         }
     }
 
@@ -173,6 +739,13 @@ public class PortalManager {
      */
     @SuppressWarnings("UnusedReturnValue")
     public BasePortal createPortal(String portalType, Location location) throws InvalidPortalException {
+        return createPortal(portalType, location, null);
+    }
+
+    /**
+     * Create a portal, restoring its stored geometry if its structure is unchanged
+     */
+    public BasePortal createPortal(String portalType, Location location, PortalGeometry geometry) throws InvalidPortalException {
         if (!portalClasses.containsKey(portalType)) {
             throw new InvalidPortalException("No such portal type");
         }
@@ -180,9 +753,14 @@ public class PortalManager {
         BasePortal portal;
 
         try {
-            Constructor<? extends BasePortal> c = portalClasses.get(portalType).getConstructor(PortalManager.class, Location.class, PortalConfig.class);
-            portal = c.newInstance(this, location, this.portalConfig.get(portalType));
-        } catch (NoSuchMethodException | InstantiationException | InvocationTargetException | IllegalAccessException e) {
+            Class<? extends BasePortal> portalClass = portalClasses.get(portalType);
+            PortalConfig config = this.portalConfig.get(portalType);
+            portal = geometry != null ? createPortal(portalClass, location, config, geometry) : null;
+            if (portal == null) {
+                Constructor<? extends BasePortal> c = portalClass.getConstructor(PortalManager.class, Location.class, PortalConfig.class);
+                portal = c.newInstance(this, location, config);
+            }
+        } catch (ReflectiveOperationException e) {
             e.printStackTrace();
             throw new InvalidPortalException("Unable to create portal");
         }
@@ -192,12 +770,27 @@ public class PortalManager {
         return portal;
     }
 
+    // Portal classes registered by other plugins may not accept stored geometry, in which case this returns null
+    private BasePortal createPortal(Class<? extends BasePortal> portalClass, Location location, PortalConfig config,
+                                    PortalGeometry geometry) throws ReflectiveOperationException {
+        Constructor<? extends BasePortal> c;
+        try {
+            c = portalClass.getConstructor(PortalManager.class, Location.class, PortalConfig.class, PortalGeometry.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return c.newInstance(this, location, config, geometry);
+    }
+
     public void removePortal(BasePortal portal) {
         portals.remove(portal);
-        indexFrames.values().removeIf(v -> v.equals(portal));
-        indexPortals.values().removeIf(v -> v.equals(portal));
-        indexBases.values().removeIf(v -> v.equals(portal));
-        indexPortalBlocks.values().removeIf(v -> v.equals(portal));
+        directory.release(portal);
+        pendingDials.remove(portal);
+        activePortals.remove(portal);
+        tickets.release(portal);
+        for (WorldPortalIndex<BasePortal> index : worldIndexes.values()) {
+            index.removePortal(portal);
+        }
     }
 
     // Create block based upon portal
@@ -223,47 +816,180 @@ public class PortalManager {
         return item;
     }
 
+    /**
+     * Record whether a portal is dialled to another portal
+     */
+    public void setActive(BasePortal portal, boolean active) {
+        pendingDials.remove(portal);
+        if (active) {
+            activePortals.add(portal);
+            tickets.dial(portal, portal.getDialledPortal());
+        } else {
+            activePortals.remove(portal);
+            tickets.release(portal);
+        }
+    }
+
+    /**
+     * Return the portals currently dialled to another portal
+     */
+    public Collection<BasePortal> getActivePortals() {
+        return Collections.unmodifiableCollection(activePortals);
+    }
+
     public void reindexPortal(BasePortal portal) {
-        indexPortalBlocks.values().removeIf(v -> v.equals(portal));
-        indexPortalBlocks.put(portal.getLocation().toVector().toBlockVector(), portal);
+        if (portal.isValid() && portal.getNetwork() != null && portal.getAddress() != null) {
+            int network = portal.getNetwork();
+            int address = portal.getAddress();
+            if (!directory.claim(portal, network, address) && !isAddressTaken(network, address, portal)) {
+                // Take over from the stored portal at this location
+                directory.release(directory.get(network, address));
+                directory.claim(portal, network, address);
+            }
+        } else {
+            directory.release(portal);
+        }
+
+        for (WorldPortalIndex<BasePortal> index : worldIndexes.values()) {
+            index.removePortal(portal);
+        }
+
+        Location location = portal.getLocation();
+        if (!location.isWorldLoaded() || location.getWorld() == null) {
+            return;
+        }
+
+        // Only loaded worlds are indexed
+        WorldPortalIndex<BasePortal> index = worldIndexes.get(location.getWorld().getUID());
+        if (index == null) {
+            return;
+        }
+
+        index.add(BlockKey.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ()), portal, WorldPortalIndex.BLOCK);
 
-        indexFrames.values().removeIf(v -> v.equals(portal));
         for (Iterator<BlockVector> it = portal.getPortalFrameIterator(); it.hasNext(); ) {
             BlockVector loc = it.next();
-            indexFrames.put(loc, portal);
+            index.add(BlockKey.pack(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()), portal, WorldPortalIndex.FRAME);
         }
 
-        indexPortals.values().removeIf(v -> v.equals(portal));
         for (Iterator<BlockVector> it = portal.getPortalIterator(); it.hasNext(); ) {
             BlockVector loc = it.next();
-            indexPortals.put(loc, portal);
+            index.add(BlockKey.pack(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()), portal, WorldPortalIndex.PORTAL);
         }
 
-        indexBases.values().removeIf(v -> v.equals(portal));
         for (Iterator<BlockVector> it = portal.getPortalBaseIterator(); it.hasNext(); ) {
             BlockVector loc = it.next();
-            indexBases.put(loc, portal);
+            index.add(BlockKey.pack(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()), portal, WorldPortalIndex.BASE);
         }
+
+        index.setBounds(portal, portal.getBoundingBox());
     }
 
     /**
-     * Find a portal
+     * Start indexing a world
      */
-    public BasePortal find(Integer network, Integer address, Boolean valid) {
+    public void loadWorld(@NonNull World world) {
+        if (worldIndexes.containsKey(world.getUID())) {
+            return;
+        }
+
+        worldIndexes.put(world.getUID(), new WorldPortalIndex<>(BasePortal::isValid));
         for (BasePortal portal : portals) {
-            if (valid != null && portal.isValid() != valid) {
-                continue;
+            Location location = portal.getLocation();
+            if (location.isWorldLoaded() && world.equals(location.getWorld())) {
+                reindexPortal(portal);
             }
+        }
 
-            if (!Objects.equals(portal.getNetwork(), network)) {
-                continue;
+        // Chunk tickets were lost when the world unloaded
+        for (PortalKey key : loading) {
+            if (key.getWorld().equals(world.getUID())) {
+                tickets.holdChunk(world, BlockKey.getX(key.getPosition()) >> 4, BlockKey.getZ(key.getPosition()) >> 4);
             }
+        }
 
-            if (!Objects.equals(portal.getAddress(), address)) {
-                continue;
+        // Queue stored portals in chunks that are already loaded
+        LongObjectHashMap<List<PortalData>> chunks = pending.get(world.getUID());
+        if (chunks != null) {
+            List<Chunk> loaded = new ArrayList<>();
+            chunks.forEach((key, bucket) -> {
+                int chunkX = (int) (key >> 32);
+                int chunkZ = (int) key;
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    loaded.add(world.getChunkAt(chunkX, chunkZ));
+                }
+            });
+            loaded.forEach(this::loadChunk);
+        }
+
+        // Read stored portals near chunks loaded with the world
+        for (Chunk chunk : world.getLoadedChunks()) {
+            readChunk(world.getUID(), chunk.getX(), chunk.getZ());
+        }
+    }
+
+    /**
+     * Drop the index of a world and hold its portals until it is loaded again
+     */
+    public void unloadWorld(@NonNull World world) {
+        worldIndexes.remove(world.getUID());
+
+        Set<BasePortal> unloading = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BasePortal portal : portals) {
+            Location location = portal.getLocation();
+            if (location.isWorldLoaded() && world.equals(location.getWorld())) {
+                unloading.add(portal);
             }
+        }
 
-            return portal;
+        for (BasePortal portal : unloading) {
+            PortalData data = portalData(portal);
+
+            // Portals in other worlds wait to be dialled again when this world returns
+            BasePortal dialled = portal.getDialledPortal();
+            if (dialled != null && !unloading.contains(dialled)) {
+                dialled.dial(null, portal);
+                if (portal.isValid()) {
+                    pendingDials.put(dialled, portal.getAddress());
+                }
+            }
+
+            directory.release(portal);
+            pendingDials.remove(portal);
+            if (data != null) {
+                reserve(data);
+                park(data);
+            }
+        }
+        portals.removeIf(unloading::contains);
+        activePortals.removeAll(unloading);
+        unloading.forEach(tickets::release);
+        tickets.unloadWorld(world);
+
+        // Stored portals not created yet
+        loadQueue.removeIf(data -> {
+            if (data.getWorld().equals(world.getUID())) {
+                park(data);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Find a portal
+     */
+    public BasePortal find(Integer network, Integer address, Boolean valid) {
+        if (network == null || address == null) {
+            return null;
+        }
+
+        Object claimant = directory.get(network, address);
+        if (claimant instanceof BasePortal) {
+            BasePortal portal = (BasePortal) claimant;
+            if (valid == null || valid == portal.isValid()) {
+                return portal;
+            }
         }
         return null;
     }
@@ -273,15 +999,124 @@ public class PortalManager {
     }
 
     /**
-     * Get a portal based upon its inside
+     * Return true if an address is held by another portal, including stored portals that are not created yet
+     */
+    public boolean isAddressTaken(int network, int address, @NonNull BasePortal portal) {
+        Object claimant = directory.get(network, address);
+        if (claimant == null || claimant == portal) {
+            return false;
+        }
+
+        // A portal built where a stored portal is waiting to be created replaces it
+        Location location = portal.getLocation();
+        return !(claimant instanceof PortalKey) || !location.isWorldLoaded() || location.getWorld() == null ||
+                !claimant.equals(new PortalKey(location.getWorld().getUID(),
+                        BlockKey.pack(location.getBlockX(), location.getBlockY(), location.getBlockZ())));
+    }
+
+    /**
+     * Return the lowest address in a network after the given address that is held by a portal, including stored
+     * portals that are not created yet
+     *
+     * @param after   address to start after, or -1 to start from the beginning
+     * @param exclude address to skip, or -1 for none
+     * @return address or -1 if none
+     */
+    public int findNext(int network, int after, int exclude) {
+        return directory.next(network, after, exclude);
+    }
+
+    /**
+     * Dial a portal to a stored portal that is not created yet. Its chunk is loaded and the dial completes once it is
+     * created.
+     *
+     * @return false if no stored portal holds the address
      */
-    public BasePortal findByPortal(@NonNull BlockVector search, Boolean valid) {
-        BasePortal portal = indexPortals.entrySet().stream()
-                .filter(e -> e.getKey().equals(search))
-                .map(Map.Entry::getValue)
-                .findFirst()
-                .orElse(null);
+    public boolean dialStored(@NonNull BasePortal portal, int address) {
+        if (portal.getNetwork() == null) {
+            return false;
+        }
 
+        Object claimant = directory.get(portal.getNetwork(), address);
+        if (!(claimant instanceof PortalKey)) {
+            return false;
+        }
+
+        portal.dial(null);
+        pendingDials.put(portal, address);
+        hold((PortalKey) claimant);
+        return true;
+    }
+
+    /**
+     * Return the address a portal is waiting to be dialled to, or null if none
+     */
+    public Integer getPendingDial(BasePortal portal) {
+        return pendingDials.get(portal);
+    }
+
+    // Keep the chunk of a stored portal loaded until the portal is created
+    private void hold(PortalKey key) {
+        if (!loading.add(key)) {
+            return;
+        }
+
+        World world = plugin.getServer().getWorld(key.getWorld());
+        if (world != null) {
+            tickets.holdChunk(world, BlockKey.getX(key.getPosition()) >> 4, BlockKey.getZ(key.getPosition()) >> 4);
+        }
+    }
+
+    private void unhold(PortalKey key) {
+        if (!loading.remove(key)) {
+            return;
+        }
+
+        World world = plugin.getServer().getWorld(key.getWorld());
+        if (world != null) {
+            tickets.releaseChunk(world, BlockKey.getX(key.getPosition()) >> 4, BlockKey.getZ(key.getPosition()) >> 4);
+        }
+    }
+
+    /**
+     * Return true if any portal may be within distance blocks of a block column
+     * <p>
+     * Only checks which chunks hold portals so it is cheap enough to call before every other lookup.
+     */
+    public boolean hasPortals(World world, int x, int z, int distance) {
+        return hasPortals(world, x - distance, z - distance, x + distance, z + distance);
+    }
+
+    /**
+     * Return true if any portal may be within a range of block columns (inclusive)
+     */
+    public boolean hasPortals(World world, int minX, int minZ, int maxX, int maxZ) {
+        if (world == null) {
+            return false;
+        }
+
+        WorldPortalIndex<BasePortal> index = worldIndexes.get(world.getUID());
+        return index != null && index.hasPortals(minX, minZ, maxX, maxZ);
+    }
+
+    public boolean hasPortals(@NonNull Location location, int distance) {
+        return hasPortals(location.getWorld(), location.getBlockX(), location.getBlockZ(), distance);
+    }
+
+    /**
+     * Return the portal owning a block in one of the requested roles
+     */
+    private BasePortal find(World world, int x, int y, int z, int roles, Boolean valid) {
+        if (world == null) {
+            return null;
+        }
+
+        WorldPortalIndex<BasePortal> index = worldIndexes.get(world.getUID());
+        if (index == null) {
+            return null;
+        }
+
+        BasePortal portal = index.get(BlockKey.pack(x, y, z), roles);
         if (portal != null) {
             if (valid == null || valid == portal.isValid()) {
                 return portal;
@@ -290,60 +1125,69 @@ public class PortalManager {
         return null;
     }
 
+    /**
+     * Get a portal based upon its inside
+     */
+    public BasePortal findByPortal(World world, int x, int y, int z, Boolean valid) {
+        return find(world, x, y, z, WorldPortalIndex.PORTAL, valid);
+    }
+
     public BasePortal findByPortal(@NonNull Location location) {
-        return findByPortal(location.toVector().toBlockVector(), null);
+        return findByPortal(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), null);
     }
 
     /**
-     * Get a portal at location
+     * Get the first portal whose inside is crossed moving from one location to another
+     * <p>
+     * Every block the path passes through is checked in order, so fast movers can't skip over a portal between moves.
+     * The path is extended by reach in the direction of travel to allow for the size of the mover. Paths longer than
+     * MAX_CROSSED blocks are only checked up to that many blocks.
      */
-    public BasePortal find(@NonNull BlockVector search, Boolean valid) {
-        BasePortal portal = Stream.concat(
-                indexFrames.entrySet().stream(),
-                Stream.concat(
-                        indexPortals.entrySet().stream(),
-                        indexBases.entrySet().stream()
-                )
-        )
-                .filter(e -> e.getKey().equals(search))
-                .map(Map.Entry::getValue)
-                .findFirst()
-                .orElse(null);
+    public BasePortal findCrossed(@NonNull Location from, @NonNull Location to, double reach) {
+        World world = from.getWorld();
+        if (world == null) {
+            return null;
+        }
 
-        if (portal != null) {
-            if (valid == null || valid == portal.isValid()) {
-                return portal;
-            }
+        WorldPortalIndex<BasePortal> index = worldIndexes.get(world.getUID());
+        if (index == null) {
+            return null;
         }
-        return null;
+
+        return index.findCrossed(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ(), reach,
+                WorldPortalIndex.PORTAL, MAX_CROSSED);
     }
 
     /**
      * Get a portal at location
      */
+    public BasePortal find(World world, int x, int y, int z, Boolean valid) {
+        return find(world, x, y, z, WorldPortalIndex.STRUCTURE, valid);
+    }
+
+    /**
+     * Get a portal at location, or failing that the first portal within distance blocks of it
+     */
     public BasePortal find(@NonNull Location location, Boolean valid, int distance) {
-        BlockVector search = location.toVector().toBlockVector();
-        BasePortal portal;
+        World world = location.getWorld();
+        int blockX = location.getBlockX();
+        int blockY = location.getBlockY();
+        int blockZ = location.getBlockZ();
 
         // Check exact match
-        portal = find(search, valid);
+        BasePortal portal = find(world, blockX, blockY, blockZ, valid);
 
-        if (portal != null) {
+        if (portal != null || distance <= 0 || world == null) {
             return portal;
         }
 
-        for (int x = -distance; x < distance; x++) {
-            for (int y = -distance; y < distance; y++) {
-                for (int z = -distance; z < distance; z++) {
-                    portal = find(search.clone().add(new Vector(x, y, z)).toBlockVector(), valid);
-                    if (portal != null) {
-                        return portal;
-                    }
-                }
-            }
+        WorldPortalIndex<BasePortal> index = worldIndexes.get(world.getUID());
+        if (index == null) {
+            return null;
         }
 
-        return null;
+        return index.findWithin(blockX - distance, blockY - distance, blockZ - distance,
+                blockX + distance, blockY + distance, blockZ + distance, valid);
     }
 
     public BasePortal find(@NonNull Location location) {
@@ -355,7 +1199,7 @@ public class PortalManager {
     }
 
     public BasePortal getPortal(@NonNull Location location) {
-        return indexPortalBlocks.get(location.toVector().toBlockVector());
+        return find(location.getWorld(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), WorldPortalIndex.BLOCK, null);
     }
 
 }
@@ -21,11 +21,16 @@ package au.com.grieve.portalnetwork;
 import au.com.grieve.bcf.platform.bukkit.BukkitCommandManager;
 import au.com.grieve.portalnetwork.commands.MainCommand;
 import au.com.grieve.portalnetwork.config.*;
+import au.com.grieve.portalnetwork.listeners.MoveEvents;
 import au.com.grieve.portalnetwork.listeners.PortalEvents;
 import au.com.grieve.portalnetwork.parsers.PortalTypeParser;
+import au.com.grieve.portalnetwork.parsers.StorageTypeParser;
 import au.com.grieve.portalnetwork.portals.End;
 import au.com.grieve.portalnetwork.portals.Hidden;
 import au.com.grieve.portalnetwork.portals.Nether;
+import au.com.grieve.portalnetwork.transit.EntityTransit;
+import au.com.grieve.portalnetwork.transit.PortalScanner;
+import au.com.grieve.portalnetwork.transit.ProjectileTransit;
 import lombok.Getter;
 import org.bukkit.Material;
 import org.bukkit.Sound;
@@ -50,6 +55,7 @@ public final class PortalNetwork extends JavaPlugin {
     private BukkitCommandManager bcf;
     private PortalManager portalManager;
     private Config configuration;
+    private MoveEvents moveEvents;
 
     public PortalNetwork() {
         instance = this;
@@ -60,6 +66,7 @@ public final class PortalNetwork extends JavaPlugin {
         // Setup Command Manager
         bcf = new BukkitCommandManager(this);
         bcf.registerParser("portaltype", PortalTypeParser.class);
+        bcf.registerParser("storagetype", StorageTypeParser.class);
 
         // Register Commands
         bcf.registerCommand(new MainCommand());
@@ -122,13 +129,15 @@ public final class PortalNetwork extends JavaPlugin {
                                 )
                         ))));
 
+        // Register Listeners now so no world or chunk events are missed while portal data loads. Until then there are
+        // no portals for them to act on.
+        getServer().getPluginManager().registerEvents(new PortalEvents(), this);
+        startTransit();
+
         new BukkitRunnable() {
             @Override
             public void run() {
                 portalManager.load();
-
-                // Register Listeners
-                getServer().getPluginManager().registerEvents(new PortalEvents(), PortalNetwork.this);
             }
         }.runTaskLater(PortalNetwork.getInstance(), 5);
     }
@@ -136,8 +145,33 @@ public final class PortalNetwork extends JavaPlugin {
     @Override
     public void onDisable() {
         // Plugin shutdown logic
-        if (portalManager != null)
+        if (moveEvents != null) {
+            moveEvents.close();
+            moveEvents = null;
+        }
+
+        if (portalManager != null) {
+            portalManager.close();
             portalManager.clear();
+        }
+    }
+
+    private void startTransit() {
+        new EntityTransit(portalManager, configuration.getTransit().getEntityLimit()).start(this);
+        new ProjectileTransit(portalManager, configuration.getTransit().getProjectileLimit()).start(this);
+        portalManager.getTickets().start();
+
+        String detection = configuration.getTransit().getDetection();
+        if (TransitConfig.DETECTION_SCAN.equalsIgnoreCase(detection)) {
+            new PortalScanner(portalManager).start(this);
+            return;
+        }
+
+        if (!TransitConfig.DETECTION_MOVE.equalsIgnoreCase(detection)) {
+            getLogger().warning("Unknown transit detection '" + detection + "', using '" + TransitConfig.DETECTION_MOVE + "'");
+        }
+        moveEvents = new MoveEvents();
+        getServer().getPluginManager().registerEvents(moveEvents, this);
     }
 
     private void initConfig() throws IOException {
@@ -23,9 +23,11 @@ import au.com.grieve.bcf.annotations.Command;
 import au.com.grieve.bcf.annotations.Default;
 import au.com.grieve.bcf.annotations.Permission;
 import au.com.grieve.bcf.platform.bukkit.BukkitCommand;
+import au.com.grieve.portalnetwork.PortalManager;
 import au.com.grieve.portalnetwork.PortalNetwork;
 import au.com.grieve.portalnetwork.exceptions.InvalidPortalException;
 import au.com.grieve.portalnetwork.portals.BasePortal;
+import au.com.grieve.portalnetwork.transit.ChunkTickets;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.ComponentBuilder;
@@ -43,6 +45,9 @@ import java.io.IOException;
 @Permission("portalnetwork.command.reload")
 @Permission("portalnetwork.command.list")
 @Permission("portalnetwork.command.give")
+@Permission("portalnetwork.command.export")
+@Permission("portalnetwork.command.migrate")
+@Permission("portalnetwork.command.tickets")
 public class MainCommand extends BukkitCommand {
 
     @Default
@@ -162,5 +167,93 @@ public class MainCommand extends BukkitCommand {
         }
     }
 
+    @Arg("export(description=Export portal data to YAML)")
+    @Permission("portalnetwork.admin")
+    @Permission("portalnetwork.command.export")
+    public void onExport(CommandSender sender) {
+        if (!PortalNetwork.getInstance().getPortalManager().isLoaded()) {
+            sender.spigot().sendMessage(
+                    new ComponentBuilder("Portal data is still loading").color(ChatColor.RED).create()
+            );
+            return;
+        }
+
+        PortalNetwork.getInstance().getPortalManager().export().whenComplete((file, error) -> {
+            if (error != null) {
+                sender.spigot().sendMessage(
+                        new ComponentBuilder("Failed to export portal data").color(ChatColor.RED).create()
+                );
+                return;
+            }
+
+            sender.spigot().sendMessage(
+                    new ComponentBuilder("Exported portal data to '" + file.getName() + "'").color(ChatColor.YELLOW).create()
+            );
+        });
+    }
+
+    @Arg("migrate(description=Copy portal data to another storage type) @storagetype(required=true)")
+    @Permission("portalnetwork.admin")
+    @Permission("portalnetwork.command.migrate")
+    public void onMigrate(CommandSender sender, String storageType) {
+        PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        if (!manager.isLoaded()) {
+            sender.spigot().sendMessage(
+                    new ComponentBuilder("Portal data is still loading").color(ChatColor.RED).create()
+            );
+            return;
+        }
+
+        if (storageType.equals(manager.getStorageType())) {
+            sender.spigot().sendMessage(
+                    new ComponentBuilder("Portal data is already stored in '" + storageType + "'").color(ChatColor.RED).create()
+            );
+            return;
+        }
+
+        sender.spigot().sendMessage(
+                new ComponentBuilder("Copying portal data to '" + storageType + "'").color(ChatColor.YELLOW).create()
+        );
+
+        manager.migrate(storageType).whenComplete((name, error) -> {
+            if (error != null) {
+                sender.spigot().sendMessage(
+                        new ComponentBuilder("Failed to migrate portal data").color(ChatColor.RED).create()
+                );
+                return;
+            }
+
+            sender.spigot().sendMessage(
+                    new ComponentBuilder("Copied portal data to '" + name + "'. Set storage type to '"
+                            + storageType + "' in config.yml and restart to use it").color(ChatColor.YELLOW).create()
+            );
+        });
+    }
+
+    @Arg("tickets(description=Show destination chunk tickets)")
+    @Permission("portalnetwork.admin")
+    @Permission("portalnetwork.command.tickets")
+    public void onTickets(CommandSender sender) {
+        ChunkTickets tickets = PortalNetwork.getInstance().getPortalManager().getTickets();
+
+        sender.spigot().sendMessage(
+                new ComponentBuilder("========= [ Chunk Tickets ] =========").color(ChatColor.AQUA).create()
+        );
+
+        sender.spigot().sendMessage(
+                new ComponentBuilder("Chunks held: ").color(ChatColor.GRAY)
+                        .append(String.valueOf(tickets.getTickets())).color(ChatColor.YELLOW)
+                        .append(" (dialled: " + tickets.getDialledHolds() + ", warming: " + tickets.getWarmHolds() + ")").color(ChatColor.GRAY)
+                        .create()
+        );
+
+        long teleports = tickets.getTeleports();
+        sender.spigot().sendMessage(
+                new ComponentBuilder("Teleports into loaded chunks: ").color(ChatColor.GRAY)
+                        .append(tickets.getLoaded() + "/" + teleports).color(ChatColor.YELLOW)
+                        .append(teleports == 0 ? "" : String.format(" (%.1f%%)", tickets.getLoaded() * 100.0 / teleports)).color(ChatColor.GRAY)
+                        .create()
+        );
+    }
 
 }
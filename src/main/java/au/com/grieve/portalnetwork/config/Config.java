@@ -40,6 +40,8 @@ public class Config {
 
     private Integer version = 2;
     private Map<String, PortalConfig> portal = new HashMap<>();
+    private StorageConfig storage = new StorageConfig();
+    private TransitConfig transit = new TransitConfig();
 
     public static Config load(File configFile) throws IOException {
         return OBJECT_MAPPER.readValue(configFile, Config.class);
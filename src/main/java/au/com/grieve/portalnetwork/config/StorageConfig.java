@@ -0,0 +1,48 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+@AllArgsConstructor
+@Getter
+@JsonIgnoreProperties(ignoreUnknown = true)
+@SuppressWarnings("FieldMayBeFinal") // Jackson requires that the fields are not final
+@NoArgsConstructor
+@ToString
+public class StorageConfig {
+    // Where portal data is stored: file, yaml, sqlite or region
+    private String type = "file";
+
+    // Minimum ticks between writes of portal data
+    private int saveInterval = 20;
+
+    // Append changes to a journal instead of rewriting all portal data
+    private boolean journal = false;
+
+    // Size in KB the journal may reach before it is compacted
+    private int journalCompactSize = 1024;
+
+    // Milliseconds per tick that may be spent creating portals as their chunks load
+    private int loadBudget = 5;
+}
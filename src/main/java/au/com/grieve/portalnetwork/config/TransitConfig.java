@@ -0,0 +1,51 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+@AllArgsConstructor
+@Getter
+@JsonIgnoreProperties(ignoreUnknown = true)
+@SuppressWarnings("FieldMayBeFinal") // Jackson requires that the fields are not final
+@NoArgsConstructor
+@ToString
+public class TransitConfig {
+    public static final String DETECTION_MOVE = "move";
+    public static final String DETECTION_SCAN = "scan";
+
+    // How entities entering a portal are detected: move or scan
+    private String detection = DETECTION_MOVE;
+
+    // Most mobs, items and other entities teleported per tick
+    private int entityLimit = 16;
+
+    // Most projectile paths checked against portals per tick
+    private int projectileLimit = 64;
+
+    // Hold chunk tickets on the destination of every dialled portal
+    private boolean chunkTickets = true;
+
+    // Blocks from a dialled portal a player warms its destination when chunk tickets are off
+    private int preloadRadius = 16;
+}
@@ -0,0 +1,131 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Directory of what holds each network and address
+ * <p>
+ * Portals dial across worlds so the directory is global. Each network keeps a bitmask of occupied addresses so that
+ * finding the next portal to dial does not need to probe every address. Claimants are compared with equals so a
+ * claim can be made and released through equal keys.
+ *
+ * @param <T> type of what claims an address
+ */
+public class AddressDirectory<T> {
+    private final int networks;
+    private final int addresses;
+
+    private final Object[] slots;
+    private final int[] occupied;
+
+    // Slot currently claimed by each claimant
+    private final Map<T, Integer> claims = new HashMap<>();
+
+    public AddressDirectory(int networks, int addresses) {
+        if (addresses > Integer.SIZE) {
+            throw new IllegalArgumentException("At most " + Integer.SIZE + " addresses per network are supported");
+        }
+
+        this.networks = networks;
+        this.addresses = addresses;
+        this.slots = new Object[networks * addresses];
+        this.occupied = new int[networks];
+    }
+
+    private boolean inRange(int network, int address) {
+        return network >= 0 && network < networks && address >= 0 && address < addresses;
+    }
+
+    /**
+     * Return what holds an address or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int network, int address) {
+        if (!inRange(network, address)) {
+            return null;
+        }
+        return (T) slots[network * addresses + address];
+    }
+
+    /**
+     * Claim an address, releasing any address the claimant previously held
+     *
+     * @return false if the address is held by something else
+     */
+    public boolean claim(T claimant, int network, int address) {
+        if (!inRange(network, address)) {
+            release(claimant);
+            return false;
+        }
+
+        int slot = network * addresses + address;
+        if (claimant.equals(slots[slot])) {
+            return true;
+        }
+
+        if (slots[slot] != null) {
+            release(claimant);
+            return false;
+        }
+
+        release(claimant);
+        slots[slot] = claimant;
+        occupied[network] |= 1 << address;
+        claims.put(claimant, slot);
+        return true;
+    }
+
+    /**
+     * Release the address held by a claimant, if any
+     */
+    public void release(T claimant) {
+        Integer slot = claims.remove(claimant);
+        if (slot == null) {
+            return;
+        }
+
+        slots[slot] = null;
+        occupied[slot / addresses] &= ~(1 << (slot % addresses));
+    }
+
+    /**
+     * Return the lowest occupied address in a network greater than after, skipping exclude
+     *
+     * @param after   address to start after, or -1 to start from the beginning
+     * @param exclude address to skip, or -1 for none
+     * @return address or -1 if none
+     */
+    public int next(int network, int after, int exclude) {
+        if (network < 0 || network >= networks || after >= addresses - 1) {
+            return -1;
+        }
+
+        int mask = occupied[network];
+        if (after >= 0) {
+            mask &= -1 << (after + 1);
+        }
+        if (exclude >= 0 && exclude < addresses) {
+            mask &= ~(1 << exclude);
+        }
+        return mask == 0 ? -1 : Integer.numberOfTrailingZeros(mask);
+    }
+}
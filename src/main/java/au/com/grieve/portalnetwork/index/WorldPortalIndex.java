@@ -0,0 +1,334 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import au.com.grieve.portalnetwork.utils.LongObjectHashMap;
+import org.bukkit.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Index of the portals in a single world
+ * <p>
+ * Each block records which portal owns it and the roles it plays in that portal so that a single probe can answer
+ * any of the location queries. Portal bounding boxes are also bucketed by chunk to answer proximity queries.
+ * <p>
+ * The chunks holding any indexed block or bounding box are tracked so that events far from a portal can be dismissed
+ * with a single probe.
+ *
+ * @param <T> type of portal
+ */
+public class WorldPortalIndex<T> {
+    // Block Roles
+    public static final int FRAME = 1;
+    public static final int PORTAL = 1 << 1;
+    public static final int BASE = 1 << 2;
+    public static final int BLOCK = 1 << 3;
+
+    // Any part of the portal structure
+    public static final int STRUCTURE = FRAME | PORTAL | BASE;
+
+    private final LongObjectHashMap<Entry<T>> blocks = new LongObjectHashMap<>();
+
+    // Block keys recorded against each portal so it can be removed without scanning the index
+    private final Map<T, Keys> owned = new IdentityHashMap<>();
+
+    // Bounding Boxes
+    private final Map<T, BoundingBox> bounds = new IdentityHashMap<>();
+    private final LongObjectHashMap<List<T>> chunks = new LongObjectHashMap<>();
+
+    // Number of indexed blocks in each chunk
+    private final LongObjectHashMap<int[]> blockChunks = new LongObjectHashMap<>();
+
+    // Whether a portal is valid, for queries that filter on it
+    private final Predicate<T> valid;
+
+    public WorldPortalIndex(Predicate<T> valid) {
+        this.valid = valid;
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static long blockChunkKey(long key) {
+        return chunkKey(BlockKey.getX(key) >> 4, BlockKey.getZ(key) >> 4);
+    }
+
+    /**
+     * Record that a block plays a role in a portal
+     */
+    public void add(long key, T portal, int role) {
+        Entry<T> entry = blocks.get(key);
+        if (entry == null || entry.portal != portal) {
+            if (blocks.put(key, new Entry<>(portal, role)) == null) {
+                long chunk = blockChunkKey(key);
+                int[] count = blockChunks.get(chunk);
+                if (count == null) {
+                    blockChunks.put(chunk, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+            owned.computeIfAbsent(portal, k -> new Keys()).add(key);
+            return;
+        }
+        entry.roles |= role;
+    }
+
+    /**
+     * Return the portal owning a block if it plays any of the requested roles
+     */
+    public T get(long key, int roles) {
+        Entry<T> entry = blocks.get(key);
+        if (entry == null || (entry.roles & roles) == 0) {
+            return null;
+        }
+        return entry.portal;
+    }
+
+    /**
+     * Return the first portal with a block in one of the requested roles along a path, checking every block the path
+     * passes through in order using a 3D DDA walk. Does not allocate.
+     *
+     * @param reach     distance to extend the path by in the direction of travel
+     * @param maxBlocks most blocks checked
+     */
+    public T findCrossed(double fromX, double fromY, double fromZ, double toX, double toY, double toZ, double reach,
+                         int roles, int maxBlocks) {
+        double dx = toX - fromX;
+        double dy = toY - fromY;
+        double dz = toZ - fromZ;
+        double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (length > 0 && reach > 0) {
+            double scale = (length + reach) / length;
+            dx *= scale;
+            dy *= scale;
+            dz *= scale;
+        }
+
+        int x = (int) Math.floor(fromX);
+        int y = (int) Math.floor(fromY);
+        int z = (int) Math.floor(fromZ);
+        int endX = (int) Math.floor(fromX + dx);
+        int endY = (int) Math.floor(fromY + dy);
+        int endZ = (int) Math.floor(fromZ + dz);
+
+        int stepX = Double.compare(dx, 0);
+        int stepY = Double.compare(dy, 0);
+        int stepZ = Double.compare(dz, 0);
+
+        // Distance along the path, as a fraction of it, to the next block boundary on each axis and between them
+        double deltaX = stepX == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+        double deltaY = stepY == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+        double deltaZ = stepZ == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dz);
+        double nextX = stepX == 0 ? Double.POSITIVE_INFINITY : (stepX > 0 ? x + 1 - fromX : fromX - x) * deltaX;
+        double nextY = stepY == 0 ? Double.POSITIVE_INFINITY : (stepY > 0 ? y + 1 - fromY : fromY - y) * deltaY;
+        double nextZ = stepZ == 0 ? Double.POSITIVE_INFINITY : (stepZ > 0 ? z + 1 - fromZ : fromZ - z) * deltaZ;
+
+        for (int i = 0; i < maxBlocks; i++) {
+            T portal = get(BlockKey.pack(x, y, z), roles);
+            if (portal != null) {
+                return portal;
+            }
+
+            if (x == endX && y == endY && z == endZ) {
+                break;
+            }
+
+            if (nextX <= nextY && nextX <= nextZ) {
+                if (nextX > 1) {
+                    break;
+                }
+                x += stepX;
+                nextX += deltaX;
+            } else if (nextY <= nextZ) {
+                if (nextY > 1) {
+                    break;
+                }
+                y += stepY;
+                nextY += deltaY;
+            } else {
+                if (nextZ > 1) {
+                    break;
+                }
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return true if any portal has a block or bounding box in the chunk
+     */
+    public boolean hasPortals(int chunkX, int chunkZ) {
+        long key = chunkKey(chunkX, chunkZ);
+        return blockChunks.containsKey(key) || chunks.containsKey(key);
+    }
+
+    /**
+     * Return true if any portal has a block or bounding box in the chunks covering a range of block columns
+     * (inclusive)
+     */
+    public boolean hasPortals(int minX, int minZ, int maxX, int maxZ) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                if (hasPortals(chunkX, chunkZ)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the bounding box of a portal, in block coordinates
+     */
+    public void setBounds(T portal, BoundingBox box) {
+        removeBounds(portal);
+        bounds.put(portal, box);
+
+        int maxChunkX = ((int) Math.ceil(box.getMaxX()) - 1) >> 4;
+        int maxChunkZ = ((int) Math.ceil(box.getMaxZ()) - 1) >> 4;
+        for (int chunkX = (int) Math.floor(box.getMinX()) >> 4; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = (int) Math.floor(box.getMinZ()) >> 4; chunkZ <= maxChunkZ; chunkZ++) {
+                long key = chunkKey(chunkX, chunkZ);
+                List<T> bucket = chunks.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(1);
+                    chunks.put(key, bucket);
+                }
+                bucket.add(portal);
+            }
+        }
+    }
+
+    private void removeBounds(T portal) {
+        BoundingBox box = bounds.remove(portal);
+        if (box == null) {
+            return;
+        }
+
+        int maxChunkX = ((int) Math.ceil(box.getMaxX()) - 1) >> 4;
+        int maxChunkZ = ((int) Math.ceil(box.getMaxZ()) - 1) >> 4;
+        for (int chunkX = (int) Math.floor(box.getMinX()) >> 4; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = (int) Math.floor(box.getMinZ()) >> 4; chunkZ <= maxChunkZ; chunkZ++) {
+                long key = chunkKey(chunkX, chunkZ);
+                List<T> bucket = chunks.get(key);
+                if (bucket == null) {
+                    continue;
+                }
+                bucket.remove(portal);
+                if (bucket.isEmpty()) {
+                    chunks.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the first portal whose bounding box overlaps the block range (inclusive)
+     */
+    public T findWithin(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Boolean valid) {
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                List<T> bucket = chunks.get(chunkKey(chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+
+                //noinspection ForLoopReplaceableByForEach
+                for (int i = 0; i < bucket.size(); i++) {
+                    T portal = bucket.get(i);
+                    if (valid != null && valid != this.valid.test(portal)) {
+                        continue;
+                    }
+
+                    BoundingBox box = bounds.get(portal);
+                    if (box.getMinX() < maxX + 1 && box.getMaxX() > minX &&
+                            box.getMinY() < maxY + 1 && box.getMaxY() > minY &&
+                            box.getMinZ() < maxZ + 1 && box.getMaxZ() > minZ) {
+                        return portal;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove a portal from the index
+     */
+    public void removePortal(T portal) {
+        Keys keys = owned.remove(portal);
+        if (keys != null) {
+            for (int i = 0; i < keys.size; i++) {
+                Entry<T> entry = blocks.get(keys.keys[i]);
+
+                // Another portal may have since claimed the block
+                if (entry != null && entry.portal == portal) {
+                    blocks.remove(keys.keys[i]);
+
+                    long chunk = blockChunkKey(keys.keys[i]);
+                    int[] count = blockChunks.get(chunk);
+                    if (count != null && --count[0] == 0) {
+                        blockChunks.remove(chunk);
+                    }
+                }
+            }
+        }
+        removeBounds(portal);
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    public boolean isEmpty() {
+        return blocks.isEmpty() && bounds.isEmpty();
+    }
+
+    private static class Keys {
+        long[] keys = new long[32];
+        int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    private static class Entry<T> {
+        final T portal;
+        int roles;
+
+        Entry(T portal, int roles) {
+            this.portal = portal;
+            this.roles = roles;
+        }
+    }
+}
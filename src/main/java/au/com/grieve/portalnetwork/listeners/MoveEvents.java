@@ -0,0 +1,135 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.listeners;
+
+import au.com.grieve.portalnetwork.PortalManager;
+import au.com.grieve.portalnetwork.PortalNetwork;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import au.com.grieve.portalnetwork.transit.IgnoredEntities;
+import au.com.grieve.portalnetwork.transit.PortalScanner;
+import org.bukkit.Location;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
+
+/**
+ * Teleport players and vehicles as they move into a dialled portal
+ * <p>
+ * Only registered when transit detection is "move". See {@link PortalScanner} for the alternative.
+ */
+public class MoveEvents implements Listener {
+
+    final IgnoredEntities ignore = new IgnoredEntities();
+
+    public MoveEvents() {
+        ignore.start(PortalNetwork.getInstance());
+    }
+
+    /**
+     * Stop sweeping ignored entities
+     */
+    public void close() {
+        ignore.stop();
+    }
+
+    @SuppressWarnings("unused")
+    @EventHandler
+    public void onPlayerQuitEvent(PlayerQuitEvent event) {
+        ignore.remove(event.getPlayer());
+    }
+
+    @SuppressWarnings("unused")
+    @EventHandler(ignoreCancelled = true)
+    public void onPlayerMoveEvent(PlayerMoveEvent event) {
+        // Runs for every movement packet so avoid allocating until a portal is found
+        Location from = event.getFrom();
+        Location to = event.getTo();
+        if (to == null) {
+            return;
+        }
+
+        // If ignored player has moved enough we stop ignoring
+        if (ignore.check(event.getPlayer(), to, 2)) {
+            return;
+        }
+
+        // If player has not moved to another block, ignore
+        if (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY() && from.getBlockZ() == to.getBlockZ()) {
+            return;
+        }
+
+        // Nothing to do away from portals
+        PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        if (!manager.hasPortals(from.getWorld(), Math.min(from.getBlockX(), to.getBlockX()) - 1,
+                Math.min(from.getBlockZ(), to.getBlockZ()) - 1, Math.max(from.getBlockX(), to.getBlockX()) + 1,
+                Math.max(from.getBlockZ(), to.getBlockZ()) + 1)) {
+            return;
+        }
+
+        // Check every block crossed, reaching slightly ahead of the player
+        BasePortal portal = manager.findCrossed(from, to, 0.2);
+
+        if (portal == null) {
+            return;
+        }
+
+        portal.handlePlayerMove(event);
+        ignore.add(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    // Handle Vehicle moves
+    @EventHandler(ignoreCancelled = true)
+    public void onVehicleMoveEvent(VehicleMoveEvent event) {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+
+        // If ignored vehicle has moved enough we stop ignoring
+        if (ignore.check(event.getVehicle(), to, 3)) {
+            return;
+        }
+
+        // If vehicle has not moved to another block, ignore
+        if (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY() && from.getBlockZ() == to.getBlockZ()) {
+            return;
+        }
+
+        // Nothing to do away from portals
+        PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        if (!manager.hasPortals(from.getWorld(), Math.min(from.getBlockX(), to.getBlockX()) - 1,
+                Math.min(from.getBlockZ(), to.getBlockZ()) - 1, Math.max(from.getBlockX(), to.getBlockX()) + 1,
+                Math.max(from.getBlockZ(), to.getBlockZ()) + 1)) {
+            return;
+        }
+
+        // Check every block crossed, reaching slightly ahead of the vehicle
+        BasePortal portal = manager.findCrossed(from, to, 0.5);
+
+        if (portal == null) {
+            return;
+        }
+
+        portal.handleVehicleMove(event);
+        ignore.add(event.getVehicle(), event.getVehicle().getLocation());
+//        for(Entity passenger : event.getVehicle().getPassengers()) {
+//            ignore.add(passenger, event.getVehicle().getLocation());
+//        }
+    }
+}
@@ -23,33 +23,32 @@ import au.com.grieve.portalnetwork.PortalNetwork;
 import au.com.grieve.portalnetwork.exceptions.InvalidPortalException;
 import au.com.grieve.portalnetwork.portals.BasePortal;
 import org.bukkit.GameMode;
-import org.bukkit.Location;
-import org.bukkit.entity.Entity;
+import org.bukkit.block.Block;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.*;
 import org.bukkit.event.entity.EntityPortalEvent;
 import org.bukkit.event.player.*;
-import org.bukkit.event.vehicle.VehicleMoveEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataType;
-import org.bukkit.util.BlockVector;
-import org.bukkit.util.Vector;
-
-import java.util.HashMap;
-import java.util.Map;
 
 
 public class PortalEvents implements Listener {
 
-    final Map<Entity, BlockVector> ignore = new HashMap<>();
-
     // Stop burning portal
     @EventHandler(ignoreCancelled = true)
     public void onBlockBurnEvent(BlockBurnEvent event) {
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        BasePortal portal = manager.find(event.getBlock().getLocation());
+        Block block = event.getBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 0)) {
+            return;
+        }
+
+        BasePortal portal = manager.find(block.getLocation());
         if (portal != null) {
             portal.handleBlockBurn(event);
         }
@@ -59,7 +58,12 @@ public class PortalEvents implements Listener {
     @EventHandler(ignoreCancelled = true)
     public void onBlockExplodeEvent(BlockExplodeEvent event) {
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        BasePortal portal = manager.find(event.getBlock().getLocation());
+        Block block = event.getBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 0)) {
+            return;
+        }
+
+        BasePortal portal = manager.find(block.getLocation());
         if (portal != null) {
             portal.handleBlockExplode(event);
         }
@@ -69,7 +73,12 @@ public class PortalEvents implements Listener {
     @EventHandler(ignoreCancelled = true)
     public void onBlockIgniteEvent(BlockIgniteEvent event) {
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        BasePortal portal = manager.find(event.getBlock().getLocation());
+        Block block = event.getBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 0)) {
+            return;
+        }
+
+        BasePortal portal = manager.find(block.getLocation());
         if (portal != null) {
             portal.handleBlockIgnite(event);
         }
@@ -79,6 +88,10 @@ public class PortalEvents implements Listener {
     @EventHandler(ignoreCancelled = true)
     public void onBlockBreakEvent(BlockBreakEvent event) {
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        Block block = event.getBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 0)) {
+            return;
+        }
 
         // Check if player is breaking a portal block
         BasePortal portal = manager.getPortal(event.getBlock().getLocation());
@@ -120,120 +133,28 @@ public class PortalEvents implements Listener {
         }
 
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        BasePortal portal = manager.find(event.getClickedBlock().getLocation());
-
-        if (portal == null) {
-            return;
-        }
-
-        portal.handlePlayerInteract(event);
-    }
-
-    @SuppressWarnings("unused")
-    @EventHandler
-    public void onPlayerQuitEvent(PlayerQuitEvent event) {
-        ignore.remove(event.getPlayer());
-    }
-
-    @SuppressWarnings("unused")
-    @EventHandler(ignoreCancelled = true)
-    public void onPlayerMoveEvent(PlayerMoveEvent event) {
-        // If ignored player has moved enough we stop ignoring
-        if (ignore.containsKey(event.getPlayer())) {
-            if (ignore.get(event.getPlayer()).distanceSquared(event.getPlayer().getLocation().toVector()) > 4) {
-                ignore.remove(event.getPlayer());
-            }
+        Block block = event.getClickedBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 0)) {
             return;
         }
 
-        // If player has not actually moved, ignore
-        if (event.getTo() == null || event.getFrom().toVector().toBlockVector() == event.getTo().toVector().toBlockVector()) {
-            return;
-        }
-
-        Vector velocity = event.getTo().toVector().subtract(event.getFrom().toVector());
-
-        PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        Location loc = event.getFrom().clone();
-        if (velocity.getZ() < 0) {
-            loc = loc.add(new Vector(0, 0, 0.2));
-        } else {
-            loc = loc.add(new Vector(0, 0, -0.2));
-        }
-
-        if (velocity.getX() < 0) {
-            loc = loc.add(new Vector(0.2, 0, 0));
-        } else {
-            loc = loc.add(new Vector(-0.2, 0, 0));
-        }
-
-        // X and Z to nearest whole number
-        loc.setX(Math.round(loc.getX()));
-        loc.setZ(Math.round(loc.getZ()));
-
-        BasePortal portal = manager.findByPortal(loc);
+        BasePortal portal = manager.find(block.getLocation());
 
         if (portal == null) {
             return;
         }
 
-        portal.handlePlayerMove(event);
-        ignore.put(event.getPlayer(), event.getPlayer().getLocation().toVector().toBlockVector());
-    }
-
-    // Handle Vehicle moves
-    @EventHandler(ignoreCancelled = true)
-    public void onVehicleMoveEvent(VehicleMoveEvent event) {
-        // If ignored player has moved enough we stop ignoring
-        if (ignore.containsKey(event.getVehicle())) {
-            if (ignore.get(event.getVehicle()).distanceSquared(event.getVehicle().getLocation().toVector()) > 9) {
-                ignore.remove(event.getVehicle());
-            }
-            return;
-        }
-
-        // If vehicle has not actually moved, ignore
-        if (event.getFrom().toVector().toBlockVector() == event.getTo().toVector().toBlockVector()) {
-            return;
-        }
-
-        Vector velocity = event.getTo().toVector().subtract(event.getFrom().toVector());
-
-        PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        Location loc = event.getFrom().clone();
-        if (velocity.getZ() < 0) {
-            loc = loc.add(new Vector(0, 0, 0.5));
-        } else {
-            loc = loc.add(new Vector(0, 0, -0.5));
-        }
-
-        if (velocity.getX() < 0) {
-            loc = loc.add(new Vector(0.5, 0, 0));
-        } else {
-            loc = loc.add(new Vector(-0.5, 0, 0));
-        }
-
-        // X and Z to nearest whole number
-        loc.setX(Math.round(loc.getX()));
-        loc.setZ(Math.round(loc.getZ()));
-
-        BasePortal portal = manager.findByPortal(loc);
-
-        if (portal == null) {
-            return;
-        }
-
-        portal.handleVehicleMove(event);
-        ignore.put(event.getVehicle(), event.getVehicle().getLocation().toVector().toBlockVector());
-//        for(Entity passenger : event.getVehicle().getPassengers()) {
-//            ignore.put(passenger, event.getVehicle().getLocation().toVector().toBlockVector());
-//        }
+        portal.handlePlayerInteract(event);
     }
 
     // Probably should move this inside nether/end portal class
     @EventHandler(priority = EventPriority.LOW)
     public void onEntityPortalEvent(EntityPortalEvent event) {
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        if (!manager.hasPortals(event.getFrom(), 2)) {
+            return;
+        }
+
         BasePortal portal = manager.find(event.getFrom(), 2);
 
         if (portal == null) {
@@ -260,6 +181,10 @@ public class PortalEvents implements Listener {
         }
 
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
+        if (!manager.hasPortals(event.getFrom(), 2)) {
+            return;
+        }
+
         BasePortal portal = manager.find(event.getFrom(), 2);
 
         if (portal == null) {
@@ -276,6 +201,24 @@ public class PortalEvents implements Listener {
     }
 
 
+    @SuppressWarnings("unused")
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoadEvent(ChunkLoadEvent event) {
+        PortalNetwork.getInstance().getPortalManager().loadChunk(event.getChunk());
+    }
+
+    @SuppressWarnings("unused")
+    @EventHandler
+    public void onWorldLoadEvent(WorldLoadEvent event) {
+        PortalNetwork.getInstance().getPortalManager().loadWorld(event.getWorld());
+    }
+
+    @SuppressWarnings("unused")
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnloadEvent(WorldUnloadEvent event) {
+        PortalNetwork.getInstance().getPortalManager().unloadWorld(event.getWorld());
+    }
+
     @SuppressWarnings("unused")
     @EventHandler(ignoreCancelled = true)
     public void onBlockPlaceEvent(BlockPlaceEvent event) {
@@ -290,6 +233,12 @@ public class PortalEvents implements Listener {
         if (meta != null) {
             meta.getPersistentDataContainer();
             if (meta.getPersistentDataContainer().has(BasePortal.PortalTypeKey, PersistentDataType.STRING)) {
+                // Stored portals could still claim this portal's address
+                if (!PortalNetwork.getInstance().getPortalManager().isLoaded()) {
+                    event.setCancelled(true);
+                    return;
+                }
+
                 String portalType = meta.getPersistentDataContainer().get(BasePortal.PortalTypeKey, PersistentDataType.STRING);
                 try {
                     PortalNetwork.getInstance().getPortalManager().createPortal(portalType, event.getBlockPlaced().getLocation());
@@ -300,7 +249,12 @@ public class PortalEvents implements Listener {
         }
 
         PortalManager manager = PortalNetwork.getInstance().getPortalManager();
-        BasePortal portal = manager.find(event.getBlock().getLocation(), 2);
+        Block block = event.getBlock();
+        if (!manager.hasPortals(block.getWorld(), block.getX(), block.getZ(), 2)) {
+            return;
+        }
+
+        BasePortal portal = manager.find(block.getLocation(), 2);
 
         if (portal == null) {
             return;
@@ -0,0 +1,54 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.parsers;
+
+import au.com.grieve.bcf.ArgNode;
+import au.com.grieve.bcf.CommandContext;
+import au.com.grieve.bcf.CommandManager;
+import au.com.grieve.bcf.exceptions.ParserInvalidResultException;
+import au.com.grieve.bcf.parsers.SingleParser;
+import au.com.grieve.portalnetwork.storage.PortalStores;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Type of Portal Data Storage
+ */
+public class StorageTypeParser extends SingleParser {
+
+    public StorageTypeParser(CommandManager manager, ArgNode argNode, CommandContext context) {
+        super(manager, argNode, context);
+    }
+
+    @Override
+    protected String result() throws ParserInvalidResultException {
+        if (PortalStores.TYPES.contains(getInput().toLowerCase())) {
+            return getInput().toLowerCase();
+        }
+        throw new ParserInvalidResultException(this, "Invalid Storage Type: " + getInput());
+    }
+
+    @Override
+    protected List<String> complete() {
+        return PortalStores.TYPES.stream()
+                .filter(p -> p.startsWith(getInput().toLowerCase()))
+                .collect(Collectors.toList());
+    }
+}
@@ -27,6 +27,7 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
 import org.bukkit.Tag;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.block.*;
@@ -37,6 +38,7 @@ import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.BlockVector;
+import org.bukkit.util.BoundingBox;
 import org.bukkit.util.Vector;
 
 import java.util.*;
@@ -46,6 +48,10 @@ public class BasePortal {
 
     static public final NamespacedKey PortalTypeKey = new NamespacedKey(PortalNetwork.getInstance(), "portal_type");
 
+    // Size of address space
+    static public final int ADDRESSES = 16;
+    static public final int NETWORKS = ADDRESSES * ADDRESSES;
+
     // Portal Manager
     @Getter
     final PortalManager manager;
@@ -107,15 +113,29 @@ public class BasePortal {
     // Size Vectors
     @Getter
     BlockVector left, right;
+    // Fingerprint of the structural blocks when last scanned
+    @Getter
+    int fingerprint;
     // Dialed
     @Getter
     BasePortal dialledPortal;
+    // Transform to the dialled portal
+    LinkTransform link;
 
     public BasePortal(PortalManager manager, Location location, PortalConfig config) {
+        this(manager, location, config, null);
+    }
+
+    /**
+     * Create a portal, restoring stored geometry instead of scanning if the structure has not changed
+     */
+    public BasePortal(PortalManager manager, Location location, PortalConfig config, PortalGeometry geometry) {
         this.manager = manager;
         this.location = location;
         this.config = config;
-        update();
+        if (geometry == null || !restore(geometry)) {
+            update();
+        }
     }
 
     /**
@@ -185,8 +205,7 @@ public class BasePortal {
         network = (WOOL_MAPPINGS.indexOf(left_block.getBlock().getType()) << 4) + WOOL_MAPPINGS.indexOf(right_block.getBlock().getType());
 
         // If address and network already exist pop out the address block
-        BasePortal p = manager.find(network, address);
-        if (p != null && p != this) {
+        if (manager.isAddressTaken(network, address, this)) {
             Material material = address_block.getBlock().getType();
             address_block.getBlock().setType(Material.AIR);
             if (address_block.getWorld() != null) {
@@ -219,7 +238,60 @@ public class BasePortal {
         }
 
         setValid(true);
+        fingerprint = fingerprint(left, right);
+        manager.reindexPortal(this);
+    }
+
+    /**
+     * Restore stored geometry
+     *
+     * @return false if the structural blocks have changed and the portal needs scanning
+     */
+    protected boolean restore(PortalGeometry geometry) {
+        BlockVector storedLeft = geometry.getLeft();
+        BlockVector storedRight = geometry.getRight();
+        if (fingerprint(storedLeft, storedRight) != geometry.getFingerprint()) {
+            return false;
+        }
+
+        if (manager.isAddressTaken(geometry.getNetwork(), geometry.getAddress(), this)) {
+            return false;
+        }
+
+        network = geometry.getNetwork();
+        address = geometry.getAddress();
+        left = storedLeft;
+        right = storedRight;
+        fingerprint = geometry.getFingerprint();
+        valid = true;
         manager.reindexPortal(this);
+        return true;
+    }
+
+    /**
+     * Hash the materials of the wool around the portal block and the base, including the block past each end
+     */
+    protected int fingerprint(BlockVector left, BlockVector right) {
+        int hash = 1;
+        hash = 31 * hash + materialHash(1, 0, 0);
+        hash = 31 * hash + materialHash(0, 0, 1);
+        hash = 31 * hash + materialHash(-1, 0, 0);
+        hash = 31 * hash + materialHash(0, 0, -1);
+
+        for (BlockVector end : List.of(left, right)) {
+            int length = Math.max(Math.abs(end.getBlockX()), Math.abs(end.getBlockZ()));
+            int dx = Integer.signum(end.getBlockX());
+            int dz = Integer.signum(end.getBlockZ());
+            for (int i = 2; i <= length + 1; i++) {
+                hash = 31 * hash + materialHash(dx * i, 0, dz * i);
+            }
+        }
+        return hash;
+    }
+
+    private int materialHash(int x, int y, int z) {
+        // Hash the name so fingerprints survive material ordering changes between versions
+        return location.getBlock().getRelative(x, y, z).getType().name().hashCode();
     }
 
     // Return portal width
@@ -240,6 +312,31 @@ public class BasePortal {
         return (int) Math.ceil(getWidth() / 2f) + 2;
     }
 
+    /**
+     * Return the bounding box, in block coordinates, of all blocks that make up the portal
+     */
+    public BoundingBox getBoundingBox() {
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+
+        if (!valid) {
+            return new BoundingBox(x, y, z, x + 1, y + 1, z + 1);
+        }
+
+        // Base runs from left to right and the address block sits behind the portal block
+        Vector direction = location.getDirection();
+        int addressX = x - (int) Math.round(direction.getX());
+        int addressZ = z - (int) Math.round(direction.getZ());
+
+        int minX = Math.min(Math.min(x + left.getBlockX(), x + right.getBlockX()), addressX);
+        int maxX = Math.max(Math.max(x + left.getBlockX(), x + right.getBlockX()), addressX);
+        int minZ = Math.min(Math.min(z + left.getBlockZ(), z + right.getBlockZ()), addressZ);
+        int maxZ = Math.max(Math.max(z + left.getBlockZ(), z + right.getBlockZ()), addressZ);
+
+        return new BoundingBox(minX, y, minZ, maxX + 1, y + getHeight(), maxZ + 1);
+    }
+
     public boolean dial(Integer address) {
         if (address == null) {
             return dial(null, null);
@@ -251,7 +348,8 @@ public class BasePortal {
 
         BasePortal portal = manager.find(network, address);
         if (portal == null) {
-            return false;
+            // It may be stored in a chunk that is not loaded
+            return manager.dialStored(this, address);
         }
 
         return dial(portal, null);
@@ -260,6 +358,8 @@ public class BasePortal {
     public boolean dial(BasePortal portal, BasePortal from) {
         if (portal == null) {
             if (dialledPortal == null) {
+                // Forget any dial still waiting for a stored portal
+                manager.setActive(this, false);
                 return true;
             }
 
@@ -269,6 +369,8 @@ public class BasePortal {
             }
 
             dialledPortal = null;
+            link = null;
+            manager.setActive(this, false);
             deactivate();
             return true;
         }
@@ -291,6 +393,8 @@ public class BasePortal {
         }
 
         dialledPortal = portal;
+        link = LinkTransform.between(this, portal);
+        manager.setActive(this, true);
         activate();
 
         return true;
@@ -305,23 +409,11 @@ public class BasePortal {
             return false;
         }
 
-        int startAddress = dialledPortal == null ? 16 : dialledPortal.getAddress();
+        Integer startAddress = dialledPortal == null ? manager.getPendingDial(this) : dialledPortal.getAddress();
 
-        for (int i = 1; i < 17; i++) {
-            int checkAddress = (startAddress + i) % 17;
-
-            if (checkAddress == address) {
-                continue;
-            }
-
-            // Address 16 to terminal call
-            if (checkAddress == 16) {
-                break;
-            }
-
-            if (dial(checkAddress)) {
-                return true;
-            }
+        int next = manager.findNext(network, startAddress == null ? -1 : startAddress, address);
+        if (next != -1) {
+            return dial(next);
         }
 
         // Deactivate
@@ -595,90 +687,90 @@ public class BasePortal {
      * Return new position and velocity of an entity to dialled portal
      */
     PositionVelocity calculatePosition(Entity entity) {
-        if (getDialledPortal() == null) {
+        if (getDialledPortal() == null || link == null) {
             return null;
         }
 
-        Location to = entity.getLocation().clone().add(entity.getVelocity());
-
-        // teleport to relative portal position
-
-        Location fromPortalLocation = getLocation().add(new Vector(0.5, 0, 0.5));
-        Location toPortalLocation = dialledPortal.getLocation().add(new Vector(0.5, 0, 0.5));
-        float yawDiff = fromPortalLocation.getYaw() - toPortalLocation.getYaw();
+        Vector velocity = entity.getVelocity();
+        Location destination = link.position(entity.getLocation(), velocity);
 
-
-        Vector playerRelativePosition = to.toVector().subtract(fromPortalLocation.toVector());
-        playerRelativePosition.rotateAroundY(Math.toRadians(yawDiff));
-
-        Location destination = toPortalLocation.clone().add(playerRelativePosition);
-
-        // Make sure Y is 1 block higher than dest portal
-        if (destination.getY() <= dialledPortal.getLocation().getY()) {
-            destination.setY(dialledPortal.getLocation().getY() + 1);
+        // Check if destination is unblocked else we will flip the player around
+        boolean passable = isPassable(destination);
+        if (!passable) {
+            destination.setYaw(destination.getYaw() + 180);
         }
 
-        // If destination portal is not wide or tall enough we clip it
-        if (destination.getY() > dialledPortal.getLocation().getY() + dialledPortal.getHeight() - 2) {
-            destination.setY(dialledPortal.getLocation().getY() + dialledPortal.getHeight() - 2);
-        }
+        return new PositionVelocity(destination, link.velocity(velocity, !passable), link.getYawDiff());
+    }
 
-        Location destinationCheck = destination.clone();
-        destinationCheck.setY(dialledPortal.getLocation().getY());
-        if (dialledPortal.getLocation().distance(destinationCheck) > ((dialledPortal.getWidth() - 2) / 2f)) {
-            destination.setX(toPortalLocation.getX());
-            destination.setZ(toPortalLocation.getZ());
+    /**
+     * Return true if the 3 blocks in front of a destination, one block up, are passable
+     */
+    private static boolean isPassable(Location destination) {
+        World world = destination.getWorld();
+        if (world == null) {
+            return true;
         }
 
-        destination.setYaw(entity.getLocation().getYaw() - yawDiff);
-        destination.setPitch(entity.getLocation().getPitch());
+        double yaw = Math.toRadians(destination.getYaw());
+        double pitch = Math.toRadians(destination.getPitch());
+        double xz = Math.cos(pitch);
+        double dx = -xz * Math.sin(yaw);
+        double dy = -Math.sin(pitch);
+        double dz = xz * Math.cos(yaw);
 
-        Vector oldVelocity = entity.getVelocity();
-        Vector newVelocity;
-
-        // Check if destination is unblocked else we will flip the player around
-        boolean passable = true;
-        for (int i = 0; i < 3; i++) {
-            if (!destination.clone().add(destination.getDirection().multiply(i + 1)).add(new Vector(0, 1, 0)).getBlock().isPassable()) {
-                passable = false;
-                break;
+        for (int i = 1; i <= 3; i++) {
+            int x = (int) Math.floor(destination.getX() + dx * i);
+            int y = (int) Math.floor(destination.getY() + dy * i + 1);
+            int z = (int) Math.floor(destination.getZ() + dz * i);
+            if (!world.getBlockAt(x, y, z).isPassable()) {
+                return false;
             }
         }
-
-        if (!passable) {
-            destination.setYaw(destination.getYaw() + 180);
-            newVelocity = oldVelocity.clone().rotateAroundY(Math.toRadians(yawDiff + 180));
-        } else {
-            newVelocity = oldVelocity.clone().rotateAroundY(Math.toRadians(yawDiff));
-        }
-
-        return new PositionVelocity(destination, newVelocity, yawDiff);
+        return true;
     }
 
     public void handleVehicleMove(VehicleMoveEvent event) {
+        teleportEntity(event.getVehicle(), event.getTo().toVector().subtract(event.getFrom().toVector()));
+    }
+
+    /**
+     * Teleport an entity and its passengers to the dialled portal
+     * <p>
+     * Used for vehicles, mobs, items and any other entity that is not a player.
+     *
+     * @param velocity velocity the entity entered the portal with
+     */
+    public void teleportEntity(Entity entity, Vector velocity) {
         if (getDialledPortal() == null) {
             return;
         }
 
-        Entity entity = event.getVehicle();
-
         // Dismount all passengers first.
         List<Entity> passengers = new ArrayList<>(entity.getPassengers());
         for (Entity passenger : passengers) {
             entity.removePassenger(passenger);
         }
 
-        entity.setVelocity(event.getTo().toVector().subtract(event.getFrom().toVector()));
+        entity.setVelocity(velocity);
         PositionVelocity pv = calculatePosition(entity);
 
+        manager.getTickets().recordTeleport(pv.getLocation());
         entity.setVelocity(pv.getVelocity());
         entity.teleport(pv.getLocation());
 
-        // Rotate and Mount all passengers
+        // Keep speed through the portal
+        manager.getScheduler().restoreVelocity(entity, pv.getVelocity());
+
+        // Rotate all passengers now and mount them once the vehicle has arrived
+        Location facing = pv.getLocation().clone();
+        if (pv.getVelocity().lengthSquared() > 0) {
+            facing.setDirection(pv.getVelocity());
+        }
         for (Entity passenger : passengers) {
-            passenger.teleport(pv.getLocation().clone().setDirection(pv.getVelocity().normalize()));
-            entity.addPassenger(passenger);
+            passenger.teleport(facing);
         }
+        manager.getScheduler().remount(entity, passengers, null);
     }
 
     public void handlePlayerMove(PlayerMoveEvent event) {
@@ -686,12 +778,19 @@ public class BasePortal {
             return;
         }
 
+        teleportPlayer(event.getPlayer(), event.getTo().toVector().subtract(event.getFrom().toVector()));
+    }
+
+    /**
+     * Teleport a player, along with any vehicle they are in, to the dialled portal
+     *
+     * @param velocity velocity the player entered the portal with
+     */
+    public void teleportPlayer(Player player, Vector velocity) {
         if (getDialledPortal() == null) {
             return;
         }
 
-        Player player = event.getPlayer();
-
         // If player is a passenger take care of the vehicle and other passengers
         boolean insideVehicle = player.isInsideVehicle() && player.getVehicle() != null;
         List<Entity> passengers = new ArrayList<>();
@@ -704,9 +803,10 @@ public class BasePortal {
             }
         }
 
-        player.setVelocity(event.getTo().toVector().subtract(event.getFrom().toVector()));
+        player.setVelocity(velocity);
         PositionVelocity pv = calculatePosition(player);
 
+        manager.getTickets().recordTeleport(pv.getLocation());
         player.setVelocity(pv.getVelocity());
         player.teleport(pv.getLocation());
         //event.setTo(pv.getLocation());
@@ -714,17 +814,8 @@ public class BasePortal {
         if (insideVehicle) {
             vehicle.teleport(pv.getLocation());
             vehicle.setVelocity(pv.getVelocity());
-            new BukkitRunnable() {
-
-                @Override
-                public void run() {
-                    for (Entity passenger : passengers) {
-                        passenger.teleport(pv.getLocation());
-                        vehicle.addPassenger(passenger);
-                    }
-                }
-            }.runTaskLater(PortalNetwork.getInstance(), 1);
-
+            manager.getScheduler().restoreVelocity(vehicle, pv.getVelocity());
+            manager.getScheduler().remount(vehicle, passengers, pv.getLocation());
         }
     }
 
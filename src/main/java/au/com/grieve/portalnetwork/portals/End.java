@@ -37,6 +37,10 @@ public class End extends BasePortal {
         super(manager, location, config);
     }
 
+    public End(PortalManager manager, Location location, PortalConfig config, PortalGeometry geometry) {
+        super(manager, location, config, geometry);
+    }
+
     /**
      * Activate Portal using type of portal as to what is seen/heard
      */
@@ -33,6 +33,10 @@ public class Hidden extends BasePortal {
         super(manager, location, config);
     }
 
+    public Hidden(PortalManager manager, Location location, PortalConfig config, PortalGeometry geometry) {
+        super(manager, location, config, geometry);
+    }
+
     /**
      * Activate Portal using type of portal as to what is seen/heard
      */
@@ -0,0 +1,129 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.portals;
+
+import lombok.Getter;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+/**
+ * Maps positions and velocities through a dialled portal to the portal it is dialled to
+ * <p>
+ * Everything that depends only on the two portals is worked out once when they are dialled so that a teleport is a
+ * few multiply-adds.
+ */
+public final class LinkTransform {
+    private final World world;
+
+    // Centres of the portal blocks
+    private final double fromX;
+    private final double fromY;
+    private final double fromZ;
+    private final double toX;
+    private final double toY;
+    private final double toZ;
+
+    // Rotation from the source portal to the destination
+    @Getter
+    private final float yawDiff;
+    private final double cos;
+    private final double sin;
+
+    // Height the destination is clamped to
+    private final double minY;
+    private final double maxY;
+
+    // Destinations further than radius from the destination portal block are moved to its centre
+    private final double cornerX;
+    private final double cornerZ;
+    private final double radius;
+
+    private LinkTransform(BasePortal from, BasePortal to) {
+        Location source = from.location;
+        Location destination = to.location;
+
+        world = destination.getWorld();
+        fromX = source.getX() + 0.5;
+        fromY = source.getY();
+        fromZ = source.getZ() + 0.5;
+        toX = destination.getX() + 0.5;
+        toY = destination.getY();
+        toZ = destination.getZ() + 0.5;
+
+        yawDiff = source.getYaw() - destination.getYaw();
+        double radians = Math.toRadians(yawDiff);
+        cos = Math.cos(radians);
+        sin = Math.sin(radians);
+
+        int height = to.getHeight();
+        minY = destination.getY() + 1;
+        maxY = destination.getY() + height - 2;
+
+        cornerX = destination.getX();
+        cornerZ = destination.getZ();
+        radius = (to.getWidth() - 2) / 2f;
+    }
+
+    public static LinkTransform between(BasePortal from, BasePortal to) {
+        return new LinkTransform(from, to);
+    }
+
+    /**
+     * Return where something at location moving with velocity comes out of the destination portal
+     * <p>
+     * The yaw is turned to match the destination and the pitch is kept.
+     */
+    public Location position(Location location, Vector velocity) {
+        // Position relative to the source portal, rotated to the destination
+        double relX = location.getX() + velocity.getX() - fromX;
+        double relZ = location.getZ() + velocity.getZ() - fromZ;
+
+        double x = toX + cos * relX + sin * relZ;
+        double y = toY + location.getY() + velocity.getY() - fromY;
+        double z = toZ - sin * relX + cos * relZ;
+
+        // Make sure Y is 1 block higher than the destination portal and clip to its height
+        if (y <= toY) {
+            y = minY;
+        }
+        if (y > maxY) {
+            y = maxY;
+        }
+
+        // If destination portal is not wide enough we come out of its centre
+        double dx = x - cornerX;
+        double dz = z - cornerZ;
+        if (radius < 0 || dx * dx + dz * dz > radius * radius) {
+            x = toX;
+            z = toZ;
+        }
+
+        return new Location(world, x, y, z, location.getYaw() - yawDiff, location.getPitch());
+    }
+
+    /**
+     * Return velocity rotated to the destination, turned around as well if flipped
+     */
+    public Vector velocity(Vector velocity, boolean flipped) {
+        double c = flipped ? -cos : cos;
+        double s = flipped ? -sin : sin;
+        return new Vector(c * velocity.getX() + s * velocity.getZ(), velocity.getY(), -s * velocity.getX() + c * velocity.getZ());
+    }
+}
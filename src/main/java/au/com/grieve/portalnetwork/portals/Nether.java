@@ -35,6 +35,10 @@ public class Nether extends BasePortal {
         super(manager, location, config);
     }
 
+    public Nether(PortalManager manager, Location location, PortalConfig config, PortalGeometry geometry) {
+        super(manager, location, config, geometry);
+    }
+
     /**
      * Activate Portal using type of portal as to what is seen/heard
      */
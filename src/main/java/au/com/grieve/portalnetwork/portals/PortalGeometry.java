@@ -0,0 +1,74 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.portals;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.bukkit.util.BlockVector;
+
+/**
+ * Structure of a valid portal as discovered by a scan, along with a fingerprint of the blocks it was read from
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public class PortalGeometry {
+    private final int network;
+    private final int address;
+
+    // Offsets of the ends of the base from the portal block
+    private final int leftX;
+    private final int leftZ;
+    private final int rightX;
+    private final int rightZ;
+
+    private final int fingerprint;
+
+    /**
+     * Capture the geometry of a portal
+     *
+     * @return geometry or null if the portal is not valid
+     */
+    public static PortalGeometry of(BasePortal portal) {
+        if (!portal.isValid()) {
+            return null;
+        }
+
+        return new PortalGeometry(
+                portal.getNetwork(),
+                portal.getAddress(),
+                portal.getLeft().getBlockX(),
+                portal.getLeft().getBlockZ(),
+                portal.getRight().getBlockX(),
+                portal.getRight().getBlockZ(),
+                portal.getFingerprint()
+        );
+    }
+
+    public BlockVector getLeft() {
+        return new BlockVector(leftX, 0, leftZ);
+    }
+
+    public BlockVector getRight() {
+        return new BlockVector(rightX, 0, rightZ);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Compact binary portal data file
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * int     magic
+ * short   version
+ * short   type count, followed by each type as a short length and UTF-8 bytes
+ * int     record count, followed by fixed size records:
+ *   long    world UUID (most significant)
+ *   long    world UUID (least significant)
+ *   long    packed block position
+ *   short   type index
+ *   float   yaw
+ *   float   pitch
+ *   short   network or -1
+ *   byte    address or -1
+ *   byte    dialled address or -1
+ *   byte    flags
+ *   byte    left x offset (version 2)
+ *   byte    left z offset (version 2)
+ *   byte    right x offset (version 2)
+ *   byte    right z offset (version 2)
+ *   int     structure fingerprint (version 2)
+ * </pre>
+ * The geometry fields are only meaningful when the geometry flag is set.
+ */
+public final class BinaryPortalFile {
+    public static final int MAGIC = 0x504E4454; // PNDT
+    public static final short VERSION = 2;
+
+    // Size of the portal state that follows the world, position and type of a record
+    private static final int STATE_SIZE_V1 = 4 + 4 + 2 + 1 + 1 + 1;
+    static final int STATE_SIZE = STATE_SIZE_V1 + 1 + 1 + 1 + 1 + 4;
+
+    private static final int FLAG_VALID = 1;
+    private static final int FLAG_GEOMETRY = 2;
+
+    // Records decoded per worker when decoding in parallel
+    private static final int PARALLEL_SLICE = 8192;
+
+    private BinaryPortalFile() {
+    }
+
+    /**
+     * Read a whole portal data file into a heap buffer and decode it
+     * <p>
+     * The file is not memory mapped as a mapping can't be released on demand and would stop the file being replaced
+     * on Windows until it is garbage collected.
+     */
+    public static List<PortalData> read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Portal data file is too large: " + file.getName());
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return read(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupt portal data file: " + file.getName(), e);
+        }
+    }
+
+    static List<PortalData> read(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a portal data file");
+        }
+
+        short version = buffer.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported portal data version: " + version);
+        }
+
+        String[] types = new String[buffer.getShort()];
+        for (int i = 0; i < types.length; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            types[i] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        int count = buffer.getInt();
+        if (count < 0 || (long) count * recordSize(version) > buffer.remaining()) {
+            throw new IOException("Truncated portal data file");
+        }
+
+        // Records are fixed size so large files are split into slices decoded in parallel
+        int recordSize = recordSize(version);
+        int base = buffer.position();
+        PortalData[] result = new PortalData[count];
+        IntStream slices = IntStream.range(0, (count + PARALLEL_SLICE - 1) / PARALLEL_SLICE);
+        if (count > PARALLEL_SLICE) {
+            slices = slices.parallel();
+        }
+        slices.forEach(slice -> {
+            ByteBuffer view = buffer.duplicate();
+            view.position(base + slice * PARALLEL_SLICE * recordSize);
+            int end = Math.min(count, (slice + 1) * PARALLEL_SLICE);
+            for (int i = slice * PARALLEL_SLICE; i < end; i++) {
+                result[i] = readRecord(view, version, types);
+            }
+        });
+        buffer.position(base + count * recordSize);
+        return Arrays.asList(result);
+    }
+
+    private static int recordSize(short version) {
+        return 8 + 8 + 8 + 2 + (version == 1 ? STATE_SIZE_V1 : STATE_SIZE);
+    }
+
+    private static PortalData readRecord(ByteBuffer buffer, short version, String[] types) {
+        UUID world = new UUID(buffer.getLong(), buffer.getLong());
+        long position = buffer.getLong();
+        String type = types[buffer.getShort()];
+        return getState(buffer, version, type, world, position);
+    }
+
+    /**
+     * Read the portal state part of a record written with a given version
+     */
+    static PortalData getState(ByteBuffer buffer, short version, String type, UUID world, long position) {
+        float yaw = buffer.getFloat();
+        float pitch = buffer.getFloat();
+        short network = buffer.getShort();
+        byte address = buffer.get();
+        byte dialled = buffer.get();
+        byte flags = buffer.get();
+
+        PortalGeometry geometry = null;
+        if (version >= 2) {
+            byte leftX = buffer.get();
+            byte leftZ = buffer.get();
+            byte rightX = buffer.get();
+            byte rightZ = buffer.get();
+            int fingerprint = buffer.getInt();
+            if ((flags & FLAG_GEOMETRY) != 0 && network >= 0 && address >= 0) {
+                geometry = new PortalGeometry(network, address, leftX, leftZ, rightX, rightZ, fingerprint);
+            }
+        }
+
+        return new PortalData(
+                type,
+                world,
+                BlockKey.getX(position),
+                BlockKey.getY(position),
+                BlockKey.getZ(position),
+                yaw,
+                pitch,
+                network < 0 ? null : (int) network,
+                address < 0 ? null : (int) address,
+                dialled < 0 ? null : (int) dialled,
+                (flags & FLAG_VALID) != 0,
+                geometry
+        );
+    }
+
+    /**
+     * Write the portal state part of a record
+     */
+    static void putState(ByteBuffer buffer, PortalData portal) {
+        buffer.putFloat(portal.getYaw());
+        buffer.putFloat(portal.getPitch());
+        buffer.putShort(portal.getNetwork() == null ? -1 : portal.getNetwork().shortValue());
+        buffer.put(portal.getAddress() == null ? -1 : portal.getAddress().byteValue());
+        buffer.put(portal.getDialled() == null ? -1 : portal.getDialled().byteValue());
+        PortalGeometry geometry = portal.getGeometry();
+        buffer.put((byte) ((portal.isValid() ? FLAG_VALID : 0) | (geometry != null ? FLAG_GEOMETRY : 0)));
+        buffer.put(geometry == null ? 0 : (byte) geometry.getLeftX());
+        buffer.put(geometry == null ? 0 : (byte) geometry.getLeftZ());
+        buffer.put(geometry == null ? 0 : (byte) geometry.getRightX());
+        buffer.put(geometry == null ? 0 : (byte) geometry.getRightZ());
+        buffer.putInt(geometry == null ? 0 : geometry.getFingerprint());
+    }
+
+    /**
+     * Write a portal data file, replacing any existing one atomically
+     */
+    public static void write(File file, List<PortalData> data) throws IOException {
+        ByteBuffer buffer = encode(data);
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static ByteBuffer encode(List<PortalData> data) {
+        // Build type table
+        Map<String, Short> typeIndex = new LinkedHashMap<>();
+        for (PortalData portal : data) {
+            typeIndex.putIfAbsent(portal.getType(), (short) typeIndex.size());
+        }
+
+        List<byte[]> typeNames = new ArrayList<>(typeIndex.size());
+        int size = 4 + 2 + 2 + 4 + data.size() * recordSize(VERSION);
+        for (String type : typeIndex.keySet()) {
+            byte[] name = type.getBytes(StandardCharsets.UTF_8);
+            typeNames.add(name);
+            size += 2 + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) typeNames.size());
+        for (byte[] name : typeNames) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+
+        buffer.putInt(data.size());
+        for (PortalData portal : data) {
+            buffer.putLong(portal.getWorld().getMostSignificantBits());
+            buffer.putLong(portal.getWorld().getLeastSignificantBits());
+            buffer.putLong(BlockKey.pack(portal.getX(), portal.getY(), portal.getZ()));
+            buffer.putShort(typeIndex.get(portal.getType()));
+            putState(buffer, portal);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+}
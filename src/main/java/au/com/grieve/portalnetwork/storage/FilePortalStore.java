@@ -0,0 +1,135 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Portal data stored as a binary snapshot with an optional journal of changes since
+ * <p>
+ * In journal mode each flush appends only the portals that were created, removed or changed since the last flush.
+ * Once the journal grows past the compaction size it is folded into a new snapshot. Without journal mode every flush
+ * replaces the snapshot.
+ */
+public class FilePortalStore implements PortalStore {
+    private final File dataFile;
+    private final PortalJournal journal;
+    private final boolean journalMode;
+    private final long compactSize;
+
+    // Current state and the changes not flushed yet
+    private final Map<PortalKey, PortalData> state = new LinkedHashMap<>();
+    private final Map<PortalKey, PortalData> upserts = new LinkedHashMap<>();
+    private final Set<PortalKey> deletes = new LinkedHashSet<>();
+
+    public FilePortalStore(File dataFile, File journalFile, boolean journalMode, long compactSize) {
+        this.dataFile = dataFile;
+        this.journal = new PortalJournal(journalFile);
+        this.journalMode = journalMode;
+        this.compactSize = compactSize;
+    }
+
+    @Override
+    public String getName() {
+        return dataFile.getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return dataFile.exists() || journal.exists();
+    }
+
+    /**
+     * Read the snapshot and replay the journal over it
+     */
+    @Override
+    public List<PortalData> loadAll() throws IOException {
+        state.clear();
+        upserts.clear();
+        deletes.clear();
+
+        if (dataFile.exists()) {
+            for (PortalData portal : BinaryPortalFile.read(dataFile)) {
+                state.put(portal.getKey(), portal);
+            }
+        }
+
+        // Never append to a journal in an older format
+        if (!journal.replay(state)) {
+            compact();
+        }
+        return new ArrayList<>(state.values());
+    }
+
+    @Override
+    public void upsert(Collection<PortalData> portals) {
+        for (PortalData portal : portals) {
+            state.put(portal.getKey(), portal);
+            upserts.put(portal.getKey(), portal);
+            deletes.remove(portal.getKey());
+        }
+    }
+
+    @Override
+    public void delete(Collection<PortalKey> keys) {
+        for (PortalKey key : keys) {
+            state.remove(key);
+            upserts.remove(key);
+            deletes.add(key);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        if (!journalMode) {
+            compact();
+            return;
+        }
+
+        journal.append(upserts.values(), deletes);
+        upserts.clear();
+        deletes.clear();
+
+        if (journal.size() > compactSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Replace the snapshot with the current state and discard the journal
+     */
+    public void compact() throws IOException {
+        BinaryPortalFile.write(dataFile, new ArrayList<>(state.values()));
+        journal.delete();
+        upserts.clear();
+        deletes.clear();
+    }
+}
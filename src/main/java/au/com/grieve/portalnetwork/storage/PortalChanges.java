@@ -0,0 +1,70 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Portals created, changed or removed since portal data was last written
+ */
+@Getter
+public class PortalChanges {
+    // State once the changes are written
+    private final Map<PortalKey, PortalData> current;
+
+    private final List<PortalData> upserts = new ArrayList<>();
+    private final List<PortalKey> deletes = new ArrayList<>();
+
+    private PortalChanges(Map<PortalKey, PortalData> current) {
+        this.current = current;
+    }
+
+    /**
+     * Compare what was last written with the current state of all portals
+     */
+    public static PortalChanges between(Map<PortalKey, PortalData> written, Collection<PortalData> data) {
+        PortalChanges changes = new PortalChanges(new LinkedHashMap<>());
+        for (PortalData portal : data) {
+            changes.current.put(portal.getKey(), portal);
+        }
+
+        for (PortalKey key : written.keySet()) {
+            if (!changes.current.containsKey(key)) {
+                changes.deletes.add(key);
+            }
+        }
+
+        for (Map.Entry<PortalKey, PortalData> entry : changes.current.entrySet()) {
+            if (!entry.getValue().equals(written.get(entry.getKey()))) {
+                changes.upserts.add(entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && deletes.isEmpty();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of the persisted state of a portal
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public class PortalData {
+    private final String type;
+
+    // Location of Portal Block
+    private final UUID world;
+    private final int x;
+    private final int y;
+    private final int z;
+
+    // Direction
+    private final float yaw;
+    private final float pitch;
+
+    private final Integer network;
+    private final Integer address;
+    private final Integer dialled;
+    private final boolean valid;
+
+    // Structure when last scanned, or null if unknown
+    private final PortalGeometry geometry;
+
+    /**
+     * Capture the state of a portal
+     *
+     * @return data or null if the portal's world is not loaded
+     */
+    public static PortalData of(String type, BasePortal portal) {
+        Location location = portal.getLocation();
+        if (!location.isWorldLoaded() || location.getWorld() == null) {
+            return null;
+        }
+
+        return new PortalData(
+                type,
+                location.getWorld().getUID(),
+                location.getBlockX(),
+                location.getBlockY(),
+                location.getBlockZ(),
+                location.getYaw(),
+                location.getPitch(),
+                portal.isValid() ? portal.getNetwork() : null,
+                portal.isValid() ? portal.getAddress() : null,
+                portal.getDialledPortal() != null ? portal.getDialledPortal().getAddress() : null,
+                portal.isValid(),
+                PortalGeometry.of(portal)
+        );
+    }
+
+    /**
+     * Return a copy of this data dialled to another address
+     */
+    public PortalData withDialled(Integer dialled) {
+        return new PortalData(type, world, x, y, z, yaw, pitch, network, address, dialled, valid, geometry);
+    }
+
+    public PortalKey getKey() {
+        return new PortalKey(world, BlockKey.pack(x, y, z));
+    }
+
+    /**
+     * Return the location of the portal block or null if its world is not loaded
+     */
+    public Location getLocation() {
+        World w = Bukkit.getWorld(world);
+        if (w == null) {
+            return null;
+        }
+        return new Location(w, x, y, z, yaw, pitch);
+    }
+}
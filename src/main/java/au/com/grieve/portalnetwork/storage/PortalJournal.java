@@ -0,0 +1,178 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only journal of changes to portal data
+ * <p>
+ * Layout (big endian): an int magic and short version followed by records, each starting with an op byte:
+ * <pre>
+ * upsert: world UUID, packed position, short type length, UTF-8 type, portal state (see BinaryPortalFile)
+ * delete: world UUID, packed position
+ * </pre>
+ * Applying a record is idempotent so replaying a journal that has already been folded into the snapshot is harmless.
+ */
+public class PortalJournal {
+    public static final int MAGIC = 0x504E4A4C; // PNJL
+    public static final short VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 2;
+
+    private static final byte OP_UPSERT = 1;
+    private static final byte OP_DELETE = 2;
+
+    private final File file;
+
+    public PortalJournal(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Size of the journal in bytes
+     */
+    public long size() {
+        return file.length();
+    }
+
+    /**
+     * Apply the journal to a state keyed by portal. A partially written trailing record is discarded.
+     *
+     * @return false if the journal was written by an older version and must be compacted before appending
+     */
+    public boolean replay(Map<PortalKey, PortalData> state) throws IOException {
+        if (!file.exists()) {
+            return true;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+        // Crashed before the header was written
+        if (buffer.remaining() < HEADER_SIZE) {
+            delete();
+            return true;
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a portal journal file");
+        }
+
+        short version = buffer.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported portal journal version: " + version);
+        }
+
+        int good = buffer.position();
+        try {
+            while (buffer.hasRemaining()) {
+                byte op = buffer.get();
+                UUID world = new UUID(buffer.getLong(), buffer.getLong());
+                long position = buffer.getLong();
+                PortalKey key = new PortalKey(world, position);
+
+                switch (op) {
+                    case OP_UPSERT:
+                        byte[] type = new byte[buffer.getShort()];
+                        buffer.get(type);
+                        state.put(key, BinaryPortalFile.getState(buffer, version, new String(type, StandardCharsets.UTF_8), world, position));
+                        break;
+                    case OP_DELETE:
+                        state.remove(key);
+                        break;
+                    default:
+                        throw new IOException("Corrupt portal journal record");
+                }
+                good = buffer.position();
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException | IOException e) {
+            // Crashed part way through an append. Drop the partial record so new records follow a good one.
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(good);
+            }
+        }
+        return version == VERSION;
+    }
+
+    /**
+     * Append changes to the journal
+     */
+    public void append(Collection<PortalData> upserts, Collection<PortalKey> deletes) throws IOException {
+        int size = HEADER_SIZE + deletes.size() * (1 + 8 + 8 + 8);
+        for (PortalData portal : upserts) {
+            size += 1 + 8 + 8 + 8 + 2 + portal.getType().getBytes(StandardCharsets.UTF_8).length + BinaryPortalFile.STATE_SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        boolean created = !file.exists() || file.length() == 0;
+        if (created) {
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+        }
+
+        for (PortalKey key : deletes) {
+            buffer.put(OP_DELETE);
+            buffer.putLong(key.getWorld().getMostSignificantBits());
+            buffer.putLong(key.getWorld().getLeastSignificantBits());
+            buffer.putLong(key.getPosition());
+        }
+
+        for (PortalData portal : upserts) {
+            byte[] type = portal.getType().getBytes(StandardCharsets.UTF_8);
+            buffer.put(OP_UPSERT);
+            buffer.putLong(portal.getWorld().getMostSignificantBits());
+            buffer.putLong(portal.getWorld().getLeastSignificantBits());
+            buffer.putLong(BlockKey.pack(portal.getX(), portal.getY(), portal.getZ()));
+            buffer.putShort((short) type.length);
+            buffer.put(type);
+            BinaryPortalFile.putState(buffer, portal);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Discard the journal once it has been folded into a snapshot
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+}
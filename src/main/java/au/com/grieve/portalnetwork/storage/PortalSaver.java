@@ -0,0 +1,154 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Write-behind saver for portal data
+ * <p>
+ * Changes only mark the data dirty. At most once per interval a snapshot is taken on the main thread and handed to a
+ * background thread to be written, so a burst of changes results in a single write.
+ */
+public class PortalSaver {
+    private final JavaPlugin plugin;
+    private final Supplier<List<PortalData>> snapshot;
+    private final Consumer<List<PortalData>> writer;
+    private final ExecutorService executor;
+
+    private BukkitTask pending;
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * @param snapshot Called on the main thread to capture the portal data
+     * @param writer   Called on the background thread to write a snapshot
+     */
+    public PortalSaver(JavaPlugin plugin, Supplier<List<PortalData>> snapshot, Consumer<List<PortalData>> writer) {
+        this.plugin = plugin;
+        this.snapshot = snapshot;
+        this.writer = writer;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, plugin.getName() + " Saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedule a save
+     */
+    public void markDirty(long interval) {
+        dirty = true;
+        if (pending != null || closed) {
+            return;
+        }
+
+        pending = plugin.getServer().getScheduler().runTaskLater(plugin, this::submit, Math.max(1, interval));
+    }
+
+    private void submit() {
+        pending = null;
+        if (!dirty) {
+            return;
+        }
+
+        dirty = false;
+        List<PortalData> data = snapshot.get();
+        executor.execute(() -> write(data));
+    }
+
+    private void write(List<PortalData> data) {
+        try {
+            writer.accept(data);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to save portal data", e);
+        }
+    }
+
+    /**
+     * Hand any outstanding changes to the background thread now, then run a task there once they are written
+     *
+     * @return false if the saver is closed and the task will not run
+     */
+    public boolean executeAfterSave(Runnable task) {
+        if (closed) {
+            return false;
+        }
+
+        if (pending != null) {
+            pending.cancel();
+        }
+        submit();
+        executor.execute(task);
+        return true;
+    }
+
+    /**
+     * Run a task on the background thread after the writes already handed to it
+     */
+    public void execute(Runnable task) {
+        if (!closed) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Wait for background writes to finish then synchronously write any outstanding changes
+     */
+    public void flush() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+
+        if (!closed) {
+            try {
+                executor.submit(() -> {
+                }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        if (dirty) {
+            dirty = false;
+            write(snapshot.get());
+        }
+    }
+
+    /**
+     * Flush and stop the background thread
+     */
+    public void close() {
+        flush();
+        closed = true;
+        executor.shutdown();
+    }
+}
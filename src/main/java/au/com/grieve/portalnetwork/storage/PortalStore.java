@@ -0,0 +1,110 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Backend that persists portal data
+ * <p>
+ * Changes passed to {@link #upsert} and {@link #delete} only need to be durable once {@link #flush} returns. Stores are
+ * used from one thread at a time but not always the same one: loading happens on a background thread at startup and
+ * writes on the saver thread. Lazy stores are also read from background threads as chunks load so must be thread
+ * safe.
+ */
+public interface PortalStore {
+    /**
+     * Name of where portal data is stored, for messages
+     */
+    String getName();
+
+    /**
+     * Return true if the store holds any data yet
+     */
+    boolean exists();
+
+    /**
+     * Return true if {@link #loadAll} must be called on the main thread, such as for data from older versions that
+     * refers to worlds by name
+     */
+    default boolean needsMainThread() {
+        return false;
+    }
+
+    /**
+     * Read all portals
+     */
+    List<PortalData> loadAll() throws IOException;
+
+    /**
+     * Return true if the store reads portals as their chunks load rather than all at startup. Only the portals that
+     * hold an address are read at startup, with {@link #loadAddresses}.
+     */
+    default boolean isLazy() {
+        return false;
+    }
+
+    /**
+     * Read the portals that hold an address from a lazy store
+     */
+    default List<PortalData> loadAddresses() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Mark the part of a lazy store holding a chunk as read. Called on the main thread.
+     *
+     * @return true the first time, in which case the caller must read it with {@link #loadChunk}
+     */
+    default boolean markRead(UUID world, int chunkX, int chunkZ) {
+        return false;
+    }
+
+    /**
+     * Read the part of a lazy store holding a chunk, which may include portals in nearby chunks
+     */
+    default List<PortalData> loadChunk(UUID world, int chunkX, int chunkZ) throws IOException {
+        return new ArrayList<>();
+    }
+
+    /**
+     * Add or replace portals
+     */
+    void upsert(Collection<PortalData> portals) throws IOException;
+
+    /**
+     * Remove portals
+     */
+    void delete(Collection<PortalKey> keys) throws IOException;
+
+    /**
+     * Make all changes durable
+     */
+    void flush() throws IOException;
+
+    /**
+     * Release any resources held by the store
+     */
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.config.StorageConfig;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Available portal stores
+ */
+public final class PortalStores {
+    public static final String FILE = "file";
+    public static final String YAML = "yaml";
+    public static final String SQLITE = "sqlite";
+    public static final String REGION = "region";
+
+    // In the order they are searched for data to migrate
+    public static final List<String> TYPES = List.of(FILE, YAML, SQLITE, REGION);
+
+    public static final String DATA_FILE = "portal-data.dat";
+    public static final String JOURNAL_FILE = "portal-data.journal";
+    public static final String YAML_FILE = "portal-data.yml";
+    public static final String DATABASE_FILE = "portal-data.db";
+    public static final String REGION_FOLDER = "portal-data";
+
+    private PortalStores() {
+    }
+
+    /**
+     * Create a store of the given type in a folder
+     */
+    public static PortalStore create(String type, File folder, StorageConfig config) {
+        switch (type) {
+            case FILE:
+                return new FilePortalStore(
+                        new File(folder, DATA_FILE),
+                        new File(folder, JOURNAL_FILE),
+                        config.isJournal(),
+                        config.getJournalCompactSize() * 1024L
+                );
+            case YAML:
+                return new YamlPortalStore(new File(folder, YAML_FILE));
+            case SQLITE:
+                return new SqlitePortalStore(new File(folder, DATABASE_FILE));
+            case REGION:
+                return new RegionPortalStore(new File(folder, REGION_FOLDER));
+            default:
+                throw new IllegalArgumentException("Unknown storage type: " + type);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Portal data sharded into binary files per world and 512x512 block region
+ * <p>
+ * Files are stored as {@code <world uuid>/r.<x>.<z>.dat} in the same format as {@link BinaryPortalFile}. Regions are
+ * read lazily: at startup only {@code addresses.dat}, a copy of the portals that hold an address, is read so their
+ * addresses stay reserved and can be dialled, and each region is read when one of its chunks first loads or a change
+ * first touches it. A flush only rewrites the regions that changed, in parallel.
+ * <p>
+ * The address index is removed while regions are rewritten so if the server stops part way through it is rebuilt
+ * from every region at the next start.
+ */
+public class RegionPortalStore implements PortalStore {
+    private static final int REGION_SHIFT = 9;
+    private static final Pattern REGION_FILE = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.dat");
+    private static final String ADDRESS_FILE = "addresses.dat";
+
+    private final File folder;
+    private ExecutorService executor;
+
+    // Regions read since startup and those with changes not flushed yet
+    private final Map<Region, Map<PortalKey, PortalData>> regions = new HashMap<>();
+    private final Set<Region> dirty = new HashSet<>();
+
+    // Regions that have been handed out by markRead. Checked on the main thread without locking.
+    private final Set<Region> requested = ConcurrentHashMap.newKeySet();
+
+    // Portals that hold an address, read on first use
+    private Map<PortalKey, PortalData> addresses;
+    private boolean addressesDirty;
+
+    public RegionPortalStore(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public String getName() {
+        return folder.getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return folder.isDirectory();
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "PortalNetwork Region IO");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Read every region in parallel, using the in memory copy of any region read since startup
+     */
+    @Override
+    public synchronized List<PortalData> loadAll() throws IOException {
+        List<Future<List<PortalData>>> reads = new ArrayList<>();
+        File[] worlds = folder.listFiles(File::isDirectory);
+        if (worlds != null) {
+            for (File world : worlds) {
+                UUID worldId;
+                try {
+                    worldId = UUID.fromString(world.getName());
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+
+                File[] files = world.listFiles((dir, name) -> REGION_FILE.matcher(name).matches());
+                if (files == null) {
+                    continue;
+                }
+
+                for (File file : files) {
+                    Matcher matcher = REGION_FILE.matcher(file.getName());
+                    if (matcher.matches() && regions.containsKey(new Region(worldId,
+                            Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))))) {
+                        continue;
+                    }
+                    reads.add(getExecutor().submit(() -> BinaryPortalFile.read(file)));
+                }
+            }
+        }
+
+        List<PortalData> result = new ArrayList<>();
+        for (Map<PortalKey, PortalData> data : regions.values()) {
+            result.addAll(data.values());
+        }
+        for (Future<List<PortalData>> read : reads) {
+            result.addAll(await(read));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<PortalData> loadAddresses() throws IOException {
+        List<PortalData> data = new ArrayList<>(addresses().values());
+
+        // Write a rebuilt index now rather than reading every region again at the next start
+        if (addressesDirty) {
+            flush();
+        }
+        return data;
+    }
+
+    @Override
+    public boolean markRead(UUID world, int chunkX, int chunkZ) {
+        return requested.add(new Region(world, chunkX >> (REGION_SHIFT - 4), chunkZ >> (REGION_SHIFT - 4)));
+    }
+
+    @Override
+    public synchronized List<PortalData> loadChunk(UUID world, int chunkX, int chunkZ) throws IOException {
+        Region region = new Region(world, chunkX >> (REGION_SHIFT - 4), chunkZ >> (REGION_SHIFT - 4));
+        return new ArrayList<>(read(region).values());
+    }
+
+    @Override
+    public synchronized void upsert(Collection<PortalData> portals) throws IOException {
+        Map<PortalKey, PortalData> addressed = addresses();
+        for (PortalData portal : portals) {
+            Region region = new Region(portal.getWorld(), portal.getX() >> REGION_SHIFT, portal.getZ() >> REGION_SHIFT);
+            read(region).put(portal.getKey(), portal);
+            dirty.add(region);
+
+            if (portal.isValid() && portal.getNetwork() != null && portal.getAddress() != null) {
+                addressed.put(portal.getKey(), portal);
+                addressesDirty = true;
+            } else if (addressed.remove(portal.getKey()) != null) {
+                addressesDirty = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void delete(Collection<PortalKey> keys) throws IOException {
+        Map<PortalKey, PortalData> addressed = addresses();
+        for (PortalKey key : keys) {
+            Region region = new Region(key.getWorld(), BlockKey.getX(key.getPosition()) >> REGION_SHIFT,
+                    BlockKey.getZ(key.getPosition()) >> REGION_SHIFT);
+            if (read(region).remove(key) != null) {
+                dirty.add(region);
+            }
+            if (addressed.remove(key) != null) {
+                addressesDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Rewrite the changed regions in parallel, then the address index
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (dirty.isEmpty() && !addressesDirty) {
+            return;
+        }
+
+        File addressFile = new File(folder, ADDRESS_FILE);
+        Files.deleteIfExists(addressFile.toPath());
+
+        Map<Region, Future<Void>> writes = new HashMap<>();
+        for (Region region : dirty) {
+            List<PortalData> data = new ArrayList<>(regions.get(region).values());
+            writes.put(region, getExecutor().submit(() -> {
+                write(region, data);
+                return null;
+            }));
+        }
+
+        IOException failure = null;
+        for (Map.Entry<Region, Future<Void>> write : writes.entrySet()) {
+            try {
+                await(write.getValue());
+                dirty.remove(write.getKey());
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        Files.createDirectories(folder.toPath());
+        BinaryPortalFile.write(addressFile, new ArrayList<>(addresses.values()));
+        addressesDirty = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    // Return the portals that hold an address, reading the index on first use or rebuilding it if it is missing
+    private Map<PortalKey, PortalData> addresses() throws IOException {
+        if (addresses != null) {
+            return addresses;
+        }
+
+        Map<PortalKey, PortalData> data = new LinkedHashMap<>();
+        File addressFile = new File(folder, ADDRESS_FILE);
+        if (addressFile.exists()) {
+            for (PortalData portal : BinaryPortalFile.read(addressFile)) {
+                data.put(portal.getKey(), portal);
+            }
+        } else if (exists()) {
+            for (PortalData portal : loadAll()) {
+                if (portal.isValid() && portal.getNetwork() != null && portal.getAddress() != null) {
+                    data.put(portal.getKey(), portal);
+                }
+            }
+            addressesDirty = true;
+        }
+        addresses = data;
+        return data;
+    }
+
+    // Return the portals in a region, reading it on first use
+    private Map<PortalKey, PortalData> read(Region region) throws IOException {
+        Map<PortalKey, PortalData> data = regions.get(region);
+        if (data != null) {
+            return data;
+        }
+
+        data = new LinkedHashMap<>();
+        File file = region.getFile(folder);
+        if (file.exists()) {
+            for (PortalData portal : BinaryPortalFile.read(file)) {
+                data.put(portal.getKey(), portal);
+            }
+        }
+        regions.put(region, data);
+        return data;
+    }
+
+    // Replace a region file, removing it once the region has no portals
+    private void write(Region region, List<PortalData> data) throws IOException {
+        File file = region.getFile(folder);
+        if (data.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+
+        Files.createDirectories(file.getParentFile().toPath());
+        BinaryPortalFile.write(file, data);
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for portal region", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to access portal region", e.getCause());
+        }
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    private static class Region {
+        private final UUID world;
+        private final int x;
+        private final int z;
+
+        File getFile(File folder) {
+            return new File(new File(folder, world.toString()), "r." + x + "." + z + ".dat");
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Portal data stored in an embedded SQLite database with one row per portal
+ * <p>
+ * Each flush only updates the rows of portals that were created, removed or changed since the last flush, all in a
+ * single transaction.
+ */
+public class SqlitePortalStore implements PortalStore {
+    private static final String COLUMNS = "type, world, x, y, z, yaw, pitch, network, address, dialled, valid, "
+            + "left_x, left_z, right_x, right_z, fingerprint";
+
+    private final File file;
+    private Connection connection;
+
+    // Changes not flushed yet
+    private final Map<PortalKey, PortalData> upserts = new LinkedHashMap<>();
+    private final Set<PortalKey> deletes = new LinkedHashSet<>();
+
+    public SqlitePortalStore(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    private Connection connect() throws SQLException {
+        if (connection != null) {
+            return connection;
+        }
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not available", e);
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS portals ("
+                    + "type TEXT NOT NULL, "
+                    + "world TEXT NOT NULL, "
+                    + "x INTEGER NOT NULL, "
+                    + "y INTEGER NOT NULL, "
+                    + "z INTEGER NOT NULL, "
+                    + "yaw REAL NOT NULL, "
+                    + "pitch REAL NOT NULL, "
+                    + "network INTEGER, "
+                    + "address INTEGER, "
+                    + "dialled INTEGER, "
+                    + "valid INTEGER NOT NULL, "
+                    + "left_x INTEGER, "
+                    + "left_z INTEGER, "
+                    + "right_x INTEGER, "
+                    + "right_z INTEGER, "
+                    + "fingerprint INTEGER, "
+                    + "PRIMARY KEY (world, x, y, z))");
+            statement.execute("CREATE INDEX IF NOT EXISTS portals_world ON portals (world)");
+            statement.execute("CREATE INDEX IF NOT EXISTS portals_address ON portals (network, address)");
+        }
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    @Override
+    public List<PortalData> loadAll() throws IOException {
+        List<PortalData> result = new ArrayList<>();
+        try (Statement statement = connect().createStatement();
+             ResultSet rs = statement.executeQuery("SELECT " + COLUMNS + " FROM portals")) {
+            while (rs.next()) {
+                result.add(read(rs));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new IOException("Failed to read portal database", e);
+        }
+
+        upserts.clear();
+        deletes.clear();
+        return result;
+    }
+
+    @Override
+    public void upsert(Collection<PortalData> portals) {
+        for (PortalData portal : portals) {
+            upserts.put(portal.getKey(), portal);
+            deletes.remove(portal.getKey());
+        }
+    }
+
+    @Override
+    public void delete(Collection<PortalKey> keys) {
+        for (PortalKey key : keys) {
+            upserts.remove(key);
+            deletes.add(key);
+        }
+    }
+
+    /**
+     * Apply all changes in a single transaction
+     */
+    @Override
+    public void flush() throws IOException {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        try {
+            Connection conn = connect();
+            try {
+                if (!deletes.isEmpty()) {
+                    try (PreparedStatement statement = conn.prepareStatement(
+                            "DELETE FROM portals WHERE world = ? AND x = ? AND y = ? AND z = ?")) {
+                        for (PortalKey key : deletes) {
+                            statement.setString(1, key.getWorld().toString());
+                            statement.setInt(2, BlockKey.getX(key.getPosition()));
+                            statement.setInt(3, BlockKey.getY(key.getPosition()));
+                            statement.setInt(4, BlockKey.getZ(key.getPosition()));
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+
+                if (!upserts.isEmpty()) {
+                    try (PreparedStatement statement = conn.prepareStatement(
+                            "INSERT OR REPLACE INTO portals (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                        for (PortalData portal : upserts.values()) {
+                            bind(statement, portal);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to write portal database", e);
+        }
+
+        upserts.clear();
+        deletes.clear();
+    }
+
+    private static PortalData read(ResultSet rs) throws SQLException {
+        Integer network = getInteger(rs, "network");
+        Integer address = getInteger(rs, "address");
+        Integer fingerprint = getInteger(rs, "fingerprint");
+
+        PortalGeometry geometry = null;
+        if (network != null && address != null && fingerprint != null) {
+            geometry = new PortalGeometry(network, address, rs.getInt("left_x"), rs.getInt("left_z"),
+                    rs.getInt("right_x"), rs.getInt("right_z"), fingerprint);
+        }
+
+        return new PortalData(
+                rs.getString("type"),
+                UUID.fromString(rs.getString("world")),
+                rs.getInt("x"),
+                rs.getInt("y"),
+                rs.getInt("z"),
+                rs.getFloat("yaw"),
+                rs.getFloat("pitch"),
+                network,
+                address,
+                getInteger(rs, "dialled"),
+                rs.getBoolean("valid"),
+                geometry
+        );
+    }
+
+    private static void bind(PreparedStatement statement, PortalData portal) throws SQLException {
+        PortalGeometry geometry = portal.getGeometry();
+
+        statement.setString(1, portal.getType());
+        statement.setString(2, portal.getWorld().toString());
+        statement.setInt(3, portal.getX());
+        statement.setInt(4, portal.getY());
+        statement.setInt(5, portal.getZ());
+        statement.setFloat(6, portal.getYaw());
+        statement.setFloat(7, portal.getPitch());
+        setInteger(statement, 8, portal.getNetwork());
+        setInteger(statement, 9, portal.getAddress());
+        setInteger(statement, 10, portal.getDialled());
+        statement.setBoolean(11, portal.isValid());
+        setInteger(statement, 12, geometry == null ? null : geometry.getLeftX());
+        setInteger(statement, 13, geometry == null ? null : geometry.getLeftZ());
+        setInteger(statement, 14, geometry == null ? null : geometry.getRightX());
+        setInteger(statement, 15, geometry == null ? null : geometry.getRightZ());
+        setInteger(statement, 16, geometry == null ? null : geometry.getFingerprint());
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static void setInteger(PreparedStatement statement, int index, Integer value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException("Failed to close portal database", e);
+        } finally {
+            connection = null;
+        }
+    }
+}
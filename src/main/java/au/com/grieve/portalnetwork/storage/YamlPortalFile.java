@@ -0,0 +1,208 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Human readable YAML portal data file
+ * <p>
+ * Portals are written with the UUID and block coordinates of their world so that portals in unloaded worlds are kept.
+ * Files from older versions store a serialized location instead, and those portals are skipped if their world is not
+ * loaded. Reading such a file looks up worlds by name so must be done on the main thread.
+ */
+public final class YamlPortalFile {
+    // Marker of a serialized location in files from older versions
+    private static final String LEGACY_LOCATION = "==: org.bukkit.Location";
+
+    private YamlPortalFile() {
+    }
+
+    /**
+     * Return true if a file is from an older version and stores serialized locations
+     */
+    public static boolean isLegacy(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+
+        try (Stream<String> lines = Files.lines(file.toPath(), StandardCharsets.UTF_8)) {
+            return lines.anyMatch(line -> line.trim().equals(LEGACY_LOCATION));
+        } catch (IOException | UncheckedIOException e) {
+            // Reading will fail the same way and report it
+            return false;
+        }
+    }
+
+    /**
+     * Read a YAML portal data file
+     */
+    public static List<PortalData> read(File file) throws IOException {
+        YamlConfiguration portalConfig = new YamlConfiguration();
+        try {
+            portalConfig.load(file);
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("Invalid portal data file: " + file.getName(), e);
+        }
+
+        List<PortalData> result = new ArrayList<>();
+        ConfigurationSection portalsData = portalConfig.getConfigurationSection("portals");
+        if (portalsData == null) {
+            return result;
+        }
+
+        for (String key : portalsData.getKeys(false)) {
+            ConfigurationSection portalData = portalsData.getConfigurationSection(key);
+            if (portalData == null) {
+                continue;
+            }
+
+            PortalData portal = portalData.contains("world") ? readPortal(portalData) : readLegacyPortal(portalData);
+            if (portal != null) {
+                result.add(portal);
+            }
+        }
+        return result;
+    }
+
+    private static PortalData readPortal(ConfigurationSection portalData) throws IOException {
+        UUID world;
+        try {
+            world = UUID.fromString(portalData.getString("world", ""));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid world in portal data: " + portalData.getCurrentPath(), e);
+        }
+
+        Integer network = portalData.contains("network") ? portalData.getInt("network") : null;
+        Integer address = portalData.contains("address") ? portalData.getInt("address") : null;
+
+        // Geometry belongs to the network and address it was scanned with
+        PortalGeometry geometry = null;
+        ConfigurationSection geometryData = portalData.getConfigurationSection("geometry");
+        if (geometryData != null && network != null && address != null) {
+            geometry = new PortalGeometry(
+                    network,
+                    address,
+                    geometryData.getInt("left_x"),
+                    geometryData.getInt("left_z"),
+                    geometryData.getInt("right_x"),
+                    geometryData.getInt("right_z"),
+                    geometryData.getInt("fingerprint")
+            );
+        }
+
+        return new PortalData(
+                portalData.getString("portal_type"),
+                world,
+                portalData.getInt("x"),
+                portalData.getInt("y"),
+                portalData.getInt("z"),
+                (float) portalData.getDouble("yaw"),
+                (float) portalData.getDouble("pitch"),
+                network,
+                address,
+                portalData.contains("dialled") ? portalData.getInt("dialled") : null,
+                portalData.getBoolean("valid"),
+                geometry
+        );
+    }
+
+    // Older files store a location, which needs its world to be loaded
+    private static PortalData readLegacyPortal(ConfigurationSection portalData) {
+        Location location = portalData.getLocation("location");
+        if (location == null || location.getWorld() == null) {
+            return null;
+        }
+
+        return new PortalData(
+                portalData.getString("portal_type"),
+                location.getWorld().getUID(),
+                location.getBlockX(),
+                location.getBlockY(),
+                location.getBlockZ(),
+                location.getYaw(),
+                location.getPitch(),
+                null,
+                null,
+                portalData.contains("dialled") ? portalData.getInt("dialled") : null,
+                portalData.getBoolean("valid"),
+                null
+        );
+    }
+
+    /**
+     * Write a YAML portal data file, replacing any existing one atomically
+     */
+    public static void write(File file, Collection<PortalData> data) throws IOException {
+        YamlConfiguration portalConfig = new YamlConfiguration();
+        ConfigurationSection portalsData = portalConfig.createSection("portals");
+        int i = 0;
+        for (PortalData portal : data) {
+            ConfigurationSection portalData = portalsData.createSection(Integer.toString(i++));
+            portalData.set("portal_type", portal.getType());
+            portalData.set("world", portal.getWorld().toString());
+            portalData.set("x", portal.getX());
+            portalData.set("y", portal.getY());
+            portalData.set("z", portal.getZ());
+            portalData.set("yaw", portal.getYaw());
+            portalData.set("pitch", portal.getPitch());
+            portalData.set("valid", portal.isValid());
+            if (portal.getNetwork() != null) {
+                portalData.set("network", portal.getNetwork());
+            }
+            if (portal.getAddress() != null) {
+                portalData.set("address", portal.getAddress());
+            }
+            if (portal.getDialled() != null) {
+                portalData.set("dialled", portal.getDialled());
+            }
+
+            PortalGeometry geometry = portal.getGeometry();
+            if (geometry != null) {
+                ConfigurationSection geometryData = portalData.createSection("geometry");
+                geometryData.set("left_x", geometry.getLeftX());
+                geometryData.set("left_z", geometry.getLeftZ());
+                geometryData.set("right_x", geometry.getRightX());
+                geometryData.set("right_z", geometry.getRightZ());
+                geometryData.set("fingerprint", geometry.getFingerprint());
+            }
+        }
+
+        // Write to a temporary file first so a crash can't leave a partial file behind
+        File tmpFile = new File(file.getPath() + ".tmp");
+        portalConfig.save(tmpFile);
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
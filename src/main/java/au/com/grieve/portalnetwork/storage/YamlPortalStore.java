@@ -0,0 +1,91 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Portal data stored in a human readable YAML file that is rewritten on every flush
+ */
+public class YamlPortalStore implements PortalStore {
+    private final File file;
+
+    private final Map<PortalKey, PortalData> state = new LinkedHashMap<>();
+    private boolean dirty;
+
+    public YamlPortalStore(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    @Override
+    public boolean needsMainThread() {
+        return YamlPortalFile.isLegacy(file);
+    }
+
+    @Override
+    public List<PortalData> loadAll() throws IOException {
+        state.clear();
+        dirty = false;
+        for (PortalData portal : YamlPortalFile.read(file)) {
+            state.put(portal.getKey(), portal);
+        }
+        return new ArrayList<>(state.values());
+    }
+
+    @Override
+    public void upsert(Collection<PortalData> portals) {
+        for (PortalData portal : portals) {
+            state.put(portal.getKey(), portal);
+        }
+        dirty |= !portals.isEmpty();
+    }
+
+    @Override
+    public void delete(Collection<PortalKey> keys) {
+        for (PortalKey key : keys) {
+            dirty |= state.remove(key) != null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!dirty) {
+            return;
+        }
+
+        YamlPortalFile.write(file, state.values());
+        dirty = false;
+    }
+}
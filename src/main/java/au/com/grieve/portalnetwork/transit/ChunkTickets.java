@@ -0,0 +1,306 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import au.com.grieve.portalnetwork.PortalManager;
+import au.com.grieve.portalnetwork.index.WorldPortalIndex;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import au.com.grieve.portalnetwork.utils.LongObjectHashMap;
+import lombok.Getter;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.BoundingBox;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keep the chunks around destination portals loaded so teleports don't load them mid tick
+ * <p>
+ * While a portal is dialled a plugin chunk ticket is held on the chunks around the portal it is dialled to. Without
+ * those tickets, destination chunks can instead be warmed for a short time when a player comes within a radius of a
+ * dialled portal. Single chunks can also be held, such as while a stored portal is loaded so a dial to it can
+ * complete. Chunks shared by several holds are counted so a ticket is only removed once nothing needs it.
+ */
+public class ChunkTickets {
+    // Blocks around the destination portal kept loaded, so entities coming out in front land in loaded chunks
+    public static final int MARGIN = 2;
+
+    // Ticks between checks for players near dialled portals and that a warmed chunk stays loaded
+    public static final int WARM_INTERVAL = 10;
+    public static final int WARM_TICKS = 200;
+
+    private final Plugin plugin;
+    private final PortalManager manager;
+    private final boolean dialled;
+    private final int preloadRadius;
+
+    // Number of holds on each ticketed chunk, per world
+    private final Map<UUID, LongObjectHashMap<int[]>> counts = new HashMap<>();
+
+    // Chunks held for each dialled portal and for each portal being warmed
+    private final Map<BasePortal, Hold> dialledHolds = new IdentityHashMap<>();
+    private final Map<BasePortal, Hold> warmHolds = new IdentityHashMap<>();
+
+    private BukkitTask task;
+    private long tick;
+
+    // Metrics
+    @Getter
+    private int tickets;
+    @Getter
+    private long teleports;
+    @Getter
+    private long loaded;
+
+    /**
+     * @param dialled       hold tickets on the destination of every dialled portal
+     * @param preloadRadius blocks from a dialled portal a player warms its destination, or 0 for never
+     */
+    public ChunkTickets(Plugin plugin, PortalManager manager, boolean dialled, int preloadRadius) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.dialled = dialled;
+        this.preloadRadius = preloadRadius;
+    }
+
+    /**
+     * Start warming destinations as players approach, if enabled
+     */
+    public void start() {
+        if (task != null || dialled || preloadRadius <= 0) {
+            return;
+        }
+
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::warm, WARM_INTERVAL, WARM_INTERVAL);
+    }
+
+    /**
+     * Hold the destination of a portal that has been dialled
+     */
+    public void dial(BasePortal portal, BasePortal destination) {
+        if (!dialled) {
+            return;
+        }
+
+        release(dialledHolds.remove(portal));
+        Hold hold = hold(destination);
+        if (hold != null) {
+            dialledHolds.put(portal, hold);
+        }
+    }
+
+    /**
+     * Release everything held for a portal
+     */
+    public void release(BasePortal portal) {
+        release(dialledHolds.remove(portal));
+        release(warmHolds.remove(portal));
+    }
+
+    /**
+     * Release everything held in a world
+     */
+    public void unloadWorld(World world) {
+        for (Map<BasePortal, Hold> holds : List.of(dialledHolds, warmHolds)) {
+            for (Iterator<Hold> it = holds.values().iterator(); it.hasNext(); ) {
+                Hold hold = it.next();
+                if (hold.world.equals(world)) {
+                    release(hold);
+                    it.remove();
+                }
+            }
+        }
+
+        // Single chunk holds go with the world
+        LongObjectHashMap<int[]> worldCounts = counts.remove(world.getUID());
+        if (worldCounts != null) {
+            tickets -= worldCounts.size();
+        }
+    }
+
+    /**
+     * Hold a single chunk loaded, loading it now if needed
+     */
+    public void holdChunk(World world, int chunkX, int chunkZ) {
+        addTicket(world, counts.computeIfAbsent(world.getUID(), k -> new LongObjectHashMap<>()), chunkX, chunkZ);
+    }
+
+    /**
+     * Release a chunk held by holdChunk
+     */
+    public void releaseChunk(World world, int chunkX, int chunkZ) {
+        LongObjectHashMap<int[]> worldCounts = counts.get(world.getUID());
+        if (worldCounts == null) {
+            return;
+        }
+
+        removeTicket(world, worldCounts, WorldPortalIndex.chunkKey(chunkX, chunkZ));
+        if (worldCounts.isEmpty()) {
+            counts.remove(world.getUID());
+        }
+    }
+
+    /**
+     * Record whether the chunk a teleport lands in was already loaded
+     */
+    public void recordTeleport(Location destination) {
+        World world = destination.getWorld();
+        if (world == null) {
+            return;
+        }
+
+        teleports++;
+        if (world.isChunkLoaded(destination.getBlockX() >> 4, destination.getBlockZ() >> 4)) {
+            loaded++;
+        }
+    }
+
+    public int getDialledHolds() {
+        return dialledHolds.size();
+    }
+
+    public int getWarmHolds() {
+        return warmHolds.size();
+    }
+
+    private void warm() {
+        tick += WARM_INTERVAL;
+
+        // Release warmed destinations nobody has approached for a while
+        for (Iterator<Hold> it = warmHolds.values().iterator(); it.hasNext(); ) {
+            Hold hold = it.next();
+            if (hold.expires <= tick) {
+                release(hold);
+                it.remove();
+            }
+        }
+
+        for (BasePortal portal : manager.getActivePortals()) {
+            BasePortal destination = portal.getDialledPortal();
+            World world = portal.getLocation().getWorld();
+            if (destination == null || world == null) {
+                continue;
+            }
+
+            BoundingBox area = portal.getBoundingBox().expand(preloadRadius);
+            if (world.getNearbyEntities(area, e -> e instanceof Player).isEmpty()) {
+                continue;
+            }
+
+            Hold hold = warmHolds.get(portal);
+            if (hold == null) {
+                hold = hold(destination);
+                if (hold == null) {
+                    continue;
+                }
+                warmHolds.put(portal, hold);
+            }
+            hold.expires = tick + WARM_TICKS;
+        }
+    }
+
+    private Hold hold(BasePortal destination) {
+        World world = destination.getLocation().getWorld();
+        if (world == null) {
+            return null;
+        }
+
+        BoundingBox box = destination.getBoundingBox();
+        int minChunkX = ((int) Math.floor(box.getMinX()) - MARGIN) >> 4;
+        int minChunkZ = ((int) Math.floor(box.getMinZ()) - MARGIN) >> 4;
+        int maxChunkX = ((int) Math.ceil(box.getMaxX()) - 1 + MARGIN) >> 4;
+        int maxChunkZ = ((int) Math.ceil(box.getMaxZ()) - 1 + MARGIN) >> 4;
+
+        Hold hold = new Hold(world, new long[(maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1)]);
+        LongObjectHashMap<int[]> worldCounts = counts.computeIfAbsent(world.getUID(), k -> new LongObjectHashMap<>());
+
+        int i = 0;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                hold.chunks[i++] = addTicket(world, worldCounts, chunkX, chunkZ);
+            }
+        }
+        return hold;
+    }
+
+    // Count a hold on a chunk, adding a ticket if it is the first
+    private long addTicket(World world, LongObjectHashMap<int[]> worldCounts, int chunkX, int chunkZ) {
+        long key = WorldPortalIndex.chunkKey(chunkX, chunkZ);
+        int[] count = worldCounts.get(key);
+        if (count != null) {
+            count[0]++;
+            return key;
+        }
+
+        worldCounts.put(key, new int[]{1});
+        world.addPluginChunkTicket(chunkX, chunkZ, plugin);
+        tickets++;
+        return key;
+    }
+
+    // Remove a hold on a chunk, removing its ticket if it was the last
+    private void removeTicket(World world, LongObjectHashMap<int[]> worldCounts, long key) {
+        int[] count = worldCounts.get(key);
+        if (count == null || --count[0] > 0) {
+            return;
+        }
+
+        worldCounts.remove(key);
+        world.removePluginChunkTicket((int) (key >> 32), (int) key, plugin);
+        tickets--;
+    }
+
+    private void release(Hold hold) {
+        if (hold == null) {
+            return;
+        }
+
+        LongObjectHashMap<int[]> worldCounts = counts.get(hold.world.getUID());
+        if (worldCounts == null) {
+            return;
+        }
+
+        for (long key : hold.chunks) {
+            removeTicket(hold.world, worldCounts, key);
+        }
+
+        if (worldCounts.isEmpty()) {
+            counts.remove(hold.world.getUID());
+        }
+    }
+
+    private static class Hold {
+        final World world;
+        final long[] chunks;
+        long expires;
+
+        Hold(World world, long[] chunks) {
+            this.world = world;
+            this.chunks = chunks;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import au.com.grieve.portalnetwork.PortalManager;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Boat;
+import org.bukkit.entity.ComplexEntityPart;
+import org.bukkit.entity.ComplexLivingEntity;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Hanging;
+import org.bukkit.entity.Minecart;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Carry mobs, items and other entities through dialled portals
+ * <p>
+ * These entities raise no move events and vanilla portal transport is cancelled in our portals, so once per tick the
+ * inside of each dialled portal is checked and the entities found are teleported as one batch. At most limit entities
+ * are teleported per tick. The rest stay in the portal until a later tick, which starts from the portal the last one
+ * stopped at so that one busy portal can't hold up the others.
+ */
+public class EntityTransit {
+    private final PortalManager manager;
+    private final int limit;
+    private final IgnoredEntities ignore = new IgnoredEntities();
+
+    // Entities to teleport this tick and the portal each is in
+    private final List<Entity> batch = new ArrayList<>();
+    private final List<BasePortal> batchPortals = new ArrayList<>();
+
+    private int cursor;
+    private BukkitTask task;
+
+    public EntityTransit(PortalManager manager, int limit) {
+        this.manager = manager;
+        this.limit = limit;
+    }
+
+    public void start(Plugin plugin) {
+        if (task != null || limit <= 0) {
+            return;
+        }
+
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Return true if an entity is carried by this transit rather than the player, vehicle or projectile transit
+     * <p>
+     * Only minecarts and boats raise vehicle move events. Rideable mobs such as horses and pigs are vehicles too but are
+     * carried here.
+     */
+    public static boolean canTransit(Entity entity) {
+        return !(entity instanceof Player) && !(entity instanceof Minecart) && !(entity instanceof Boat) &&
+                !(entity instanceof Projectile) &&
+                !(entity instanceof Hanging) &&
+                !(entity instanceof ComplexLivingEntity) && !(entity instanceof ComplexEntityPart) &&
+                !entity.isInsideVehicle() && entity.isValid();
+    }
+
+    private void tick() {
+        ignore.sweep();
+
+        if (manager.getActivePortals().isEmpty()) {
+            return;
+        }
+
+        gather(manager.getActivePortals().toArray(new BasePortal[0]));
+
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Entity entity = batch.get(i);
+                BasePortal portal = batchPortals.get(i);
+
+                // An earlier teleport may have changed things
+                if (portal.getDialledPortal() == null || !entity.isValid()) {
+                    continue;
+                }
+
+                portal.teleportEntity(entity, entity.getVelocity());
+                ignore.add(entity, entity.getLocation());
+            }
+        } finally {
+            batch.clear();
+            batchPortals.clear();
+        }
+    }
+
+    private void gather(BasePortal[] active) {
+        int start = cursor % active.length;
+        for (int n = 0; n < active.length; n++) {
+            int index = (start + n) % active.length;
+            BasePortal portal = active[index];
+
+            World world = portal.getLocation().getWorld();
+            if (world == null) {
+                continue;
+            }
+
+            for (Entity entity : world.getNearbyEntities(portal.getBoundingBox())) {
+                if (batch.size() >= limit) {
+                    // Start after this portal next tick so it can't starve the others
+                    cursor = index + 1;
+                    return;
+                }
+
+                if (!canTransit(entity)) {
+                    continue;
+                }
+
+                // If ignored entity has moved enough we stop ignoring
+                Location location = entity.getLocation();
+                if (ignore.check(entity, location, 2)) {
+                    continue;
+                }
+
+                if (manager.findByPortal(world, location.getBlockX(), location.getBlockY(), location.getBlockZ(), null) != portal) {
+                    continue;
+                }
+
+                batch.add(entity);
+                batchPortals.add(portal);
+            }
+        }
+        cursor = 0;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import au.com.grieve.portalnetwork.utils.LongObjectHashMap;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Entities that have just used a portal and should not trigger one again until they move away
+ * <p>
+ * Entries are keyed by entity id so no reference to the entity or its world is held. Every entry expires after a
+ * fixed number of ticks and expired entries are swept a batch at a time, so entities that are removed or unloaded
+ * without moving away are still forgotten and the number of entries stays bounded.
+ * <p>
+ * Owners that already run every tick call {@link #sweep()} from it. Others start a timer of their own.
+ */
+public class IgnoredEntities {
+    // Ticks an entity stays ignored if it never moves away
+    public static final int LIFETIME = 1200;
+
+    // Most entries kept before the oldest are dropped
+    public static final int CAPACITY = 4096;
+
+    // Most expired entries removed per tick
+    public static final int SWEEP_BATCH = 256;
+
+    private final LongObjectHashMap<Entry> entries = new LongObjectHashMap<>();
+
+    // Entries in the order they expire
+    private final Deque<Entry> expiry = new ArrayDeque<>();
+
+    private long tick;
+    private BukkitTask task;
+
+    /**
+     * Start sweeping expired entries every tick, for owners without a tick of their own
+     */
+    public void start(Plugin plugin) {
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::sweep, 1L, 1L);
+        }
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Ignore an entity until it moves away from a location
+     */
+    public void add(Entity entity, Location location) {
+        Entry entry = new Entry(entity.getEntityId(), location.getX(), location.getY(), location.getZ(), tick + LIFETIME);
+        entries.put(entry.id, entry);
+        expiry.add(entry);
+
+        while (expiry.size() > CAPACITY) {
+            expire(expiry.poll());
+        }
+    }
+
+    /**
+     * Return true if an entity is ignored
+     * <p>
+     * The entity stops being ignored once it is more than distance from where it was ignored, though this move is
+     * still reported as ignored.
+     */
+    public boolean check(Entity entity, Location location, double distance) {
+        Entry entry = entries.get(entity.getEntityId());
+        if (entry == null) {
+            return false;
+        }
+
+        double dx = entry.x - location.getX();
+        double dy = entry.y - location.getY();
+        double dz = entry.z - location.getZ();
+        if (dx * dx + dy * dy + dz * dz > distance * distance) {
+            entries.remove(entry.id);
+        }
+        return true;
+    }
+
+    public void remove(Entity entity) {
+        entries.remove(entity.getEntityId());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        expiry.clear();
+    }
+
+    /**
+     * Advance a tick and remove a batch of expired entries. Call once per tick.
+     */
+    void sweep() {
+        tick++;
+
+        for (int i = 0; i < SWEEP_BATCH; i++) {
+            Entry entry = expiry.peek();
+            if (entry == null || entry.expires > tick) {
+                return;
+            }
+            expire(expiry.poll());
+        }
+    }
+
+    // The entity may have been ignored again since, in which case a newer entry replaced this one
+    private void expire(Entry entry) {
+        if (entries.get(entry.id) == entry) {
+            entries.remove(entry.id);
+        }
+    }
+
+    private static class Entry {
+        final long id;
+        final double x;
+        final double y;
+        final double z;
+        final long expires;
+
+        Entry(long id, double x, double y, double z, long expires) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.expires = expires;
+        }
+    }
+}
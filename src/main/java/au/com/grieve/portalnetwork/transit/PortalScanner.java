@@ -0,0 +1,100 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import au.com.grieve.portalnetwork.PortalManager;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Boat;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Minecart;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Teleport players, minecarts and boats inside a dialled portal, checked once per tick
+ * <p>
+ * Only dialled portals can teleport so only they are checked, which costs the same no matter how much players and
+ * vehicles are moving elsewhere. Used instead of the move listeners when transit detection is "scan".
+ */
+public class PortalScanner {
+    private final PortalManager manager;
+    private final IgnoredEntities ignore = new IgnoredEntities();
+    private BukkitTask task;
+
+    public PortalScanner(PortalManager manager) {
+        this.manager = manager;
+    }
+
+    public void start(Plugin plugin) {
+        if (task != null) {
+            return;
+        }
+
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::scan, 1L, 1L);
+    }
+
+    private void scan() {
+        ignore.sweep();
+
+        // Teleporting may dial or undial portals so work from a copy
+        for (BasePortal portal : manager.getActivePortals().toArray(new BasePortal[0])) {
+            if (portal.getDialledPortal() == null) {
+                continue;
+            }
+
+            World world = portal.getLocation().getWorld();
+            if (world == null) {
+                continue;
+            }
+
+            for (Entity entity : world.getNearbyEntities(portal.getBoundingBox())) {
+                // Passengers go with their vehicle
+                if (entity.isInsideVehicle()) {
+                    continue;
+                }
+
+                // Rideable mobs are carried by the entity transit
+                boolean player = entity instanceof Player;
+                if (!player && !(entity instanceof Minecart) && !(entity instanceof Boat)) {
+                    continue;
+                }
+
+                // If ignored entity has moved enough we stop ignoring
+                Location location = entity.getLocation();
+                if (ignore.check(entity, location, player ? 2 : 3)) {
+                    continue;
+                }
+
+                if (manager.findByPortal(world, location.getBlockX(), location.getBlockY(), location.getBlockZ(), null) != portal) {
+                    continue;
+                }
+
+                if (player) {
+                    portal.teleportPlayer((Player) entity, entity.getVelocity());
+                } else {
+                    portal.teleportEntity(entity, entity.getVelocity());
+                }
+                ignore.add(entity, entity.getLocation());
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import au.com.grieve.portalnetwork.PortalManager;
+import au.com.grieve.portalnetwork.portals.BasePortal;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.AbstractArrow;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Projectile;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
+
+/**
+ * Carry projectiles through dialled portals
+ * <p>
+ * Projectiles move several blocks a tick so can pass right through a portal between two checks. Once per tick the
+ * path each projectile near a dialled portal will take this tick is walked against the portal index, and those that
+ * cross a dialled portal are teleported with their velocity turned to match the destination. At most limit paths
+ * are checked per tick. The next tick starts from the portal the last one stopped at.
+ */
+public class ProjectileTransit {
+    // How far outside a portal projectiles are checked. Projectiles faster than this per tick may be missed.
+    public static final double REACH = 4;
+
+    private final PortalManager manager;
+    private final int limit;
+    private final IgnoredEntities ignore = new IgnoredEntities();
+
+    private int cursor;
+    private BukkitTask task;
+
+    public ProjectileTransit(PortalManager manager, int limit) {
+        this.manager = manager;
+        this.limit = limit;
+    }
+
+    public void start(Plugin plugin) {
+        if (task != null || limit <= 0) {
+            return;
+        }
+
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    private void tick() {
+        ignore.sweep();
+
+        if (manager.getActivePortals().isEmpty()) {
+            return;
+        }
+
+        BasePortal[] active = manager.getActivePortals().toArray(new BasePortal[0]);
+        int checked = 0;
+        int start = cursor % active.length;
+        for (int n = 0; n < active.length; n++) {
+            int index = (start + n) % active.length;
+            BasePortal portal = active[index];
+
+            World world = portal.getLocation().getWorld();
+            if (portal.getDialledPortal() == null || world == null) {
+                continue;
+            }
+
+            for (Entity entity : world.getNearbyEntities(portal.getBoundingBox().expand(REACH), e -> e instanceof Projectile)) {
+                if (checked >= limit) {
+                    // Start after this portal next tick so it can't starve the others
+                    cursor = index + 1;
+                    return;
+                }
+
+                if (!entity.isValid() || entity.isInsideVehicle() ||
+                        (entity instanceof AbstractArrow && ((AbstractArrow) entity).isInBlock())) {
+                    continue;
+                }
+
+                // If ignored projectile has moved enough we stop ignoring
+                Location from = entity.getLocation();
+                if (ignore.check(entity, from, 2)) {
+                    continue;
+                }
+
+                Vector velocity = entity.getVelocity();
+                if (velocity.lengthSquared() == 0) {
+                    continue;
+                }
+
+                checked++;
+                BasePortal crossed = manager.findCrossed(from, from.clone().add(velocity), 0);
+                if (crossed == null || crossed.getDialledPortal() == null) {
+                    continue;
+                }
+
+                crossed.teleportEntity(entity, velocity);
+                ignore.add(entity, entity.getLocation());
+            }
+        }
+        cursor = 0;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Work that has to wait a tick after a teleport, run for every teleport in one pass
+ * <p>
+ * Passengers can only be mounted again once the vehicle has arrived, and entities moved between worlds lose their
+ * velocity. Rather than a task per teleport these are queued and run together by a single task that only runs while
+ * there is something queued.
+ * <p>
+ * Other tasks in the same server tick may run before or after this one, so work queued while the task is running waits
+ * for the run after next. Work that starts the task runs on its first run, which is always a later tick.
+ */
+public class TransitScheduler {
+    private final Plugin plugin;
+
+    // Work for the next run
+    private Batch ready = new Batch();
+
+    // Work queued since the last run, which may have been queued earlier in the same tick as the next run
+    private Batch queued = new Batch();
+
+    // Emptied batch reused for the next queue
+    private Batch spare = new Batch();
+
+    private BukkitTask task;
+
+    public TransitScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Set the velocity of an entity again next tick so that it keeps its speed
+     */
+    public void restoreVelocity(Entity entity, Vector velocity) {
+        target().velocities.add(new VelocityRestore(entity, velocity.clone()));
+    }
+
+    /**
+     * Mount passengers on a vehicle next tick
+     *
+     * @param location where to teleport the passengers first, or null if they are already there
+     */
+    public void remount(Entity vehicle, List<Entity> passengers, Location location) {
+        if (passengers.isEmpty()) {
+            return;
+        }
+
+        target().remounts.add(new Remount(vehicle, passengers, location));
+    }
+
+    public int size() {
+        return ready.size() + queued.size();
+    }
+
+    // The batch new work goes into, starting the task if it is stopped
+    private Batch target() {
+        if (task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::run, 1L, 1L);
+            return ready;
+        }
+        return queued;
+    }
+
+    private void run() {
+        Batch batch = ready;
+        ready = queued;
+        queued = spare;
+
+        for (VelocityRestore restore : batch.velocities) {
+            if (restore.entity.isValid()) {
+                restore.entity.setVelocity(restore.velocity);
+            }
+        }
+
+        for (Remount remount : batch.remounts) {
+            if (!remount.vehicle.isValid()) {
+                continue;
+            }
+
+            for (Entity passenger : remount.passengers) {
+                if (!passenger.isValid()) {
+                    continue;
+                }
+
+                if (remount.location != null) {
+                    passenger.teleport(remount.location);
+                }
+                remount.vehicle.addPassenger(passenger);
+            }
+        }
+
+        batch.clear();
+        spare = batch;
+
+        if (size() == 0) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private static class Batch {
+        final List<VelocityRestore> velocities = new ArrayList<>();
+        final List<Remount> remounts = new ArrayList<>();
+
+        int size() {
+            return velocities.size() + remounts.size();
+        }
+
+        void clear() {
+            velocities.clear();
+            remounts.clear();
+        }
+    }
+
+    private static class VelocityRestore {
+        final Entity entity;
+        final Vector velocity;
+
+        VelocityRestore(Entity entity, Vector velocity) {
+            this.entity = entity;
+            this.velocity = velocity;
+        }
+    }
+
+    private static class Remount {
+        final Entity vehicle;
+        final List<Entity> passengers;
+        final Location location;
+
+        Remount(Entity vehicle, List<Entity> passengers, Location location) {
+            this.vehicle = vehicle;
+            this.passengers = passengers;
+            this.location = location;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AddressDirectoryTest {
+    private final AddressDirectory<String> directory = new AddressDirectory<>(256, 16);
+
+    @Test
+    void claimAndRelease() {
+        assertTrue(directory.claim("a", 1, 2));
+        assertEquals("a", directory.get(1, 2));
+
+        // Claiming again is a no-op
+        assertTrue(directory.claim("a", 1, 2));
+
+        directory.release("a");
+        assertNull(directory.get(1, 2));
+
+        // Releasing twice is harmless
+        directory.release("a");
+    }
+
+    @Test
+    void addressHeldByOneClaimant() {
+        assertTrue(directory.claim("a", 1, 2));
+        assertFalse(directory.claim("b", 1, 2));
+        assertEquals("a", directory.get(1, 2));
+    }
+
+    @Test
+    void claimMovesClaimant() {
+        assertTrue(directory.claim("a", 1, 2));
+        assertTrue(directory.claim("a", 3, 4));
+        assertNull(directory.get(1, 2));
+        assertEquals("a", directory.get(3, 4));
+        assertEquals(-1, directory.next(1, -1, -1));
+    }
+
+    @Test
+    void failedClaimReleasesPreviousAddress() {
+        directory.claim("a", 1, 2);
+        directory.claim("b", 1, 3);
+        assertFalse(directory.claim("b", 1, 2));
+        assertNull(directory.get(1, 3));
+    }
+
+    @Test
+    void claimsUseEquals() {
+        directory.claim(new String("key"), 1, 2);
+        assertFalse(directory.claim("other", 1, 2));
+
+        directory.release(new String("key"));
+        assertNull(directory.get(1, 2));
+    }
+
+    @Test
+    void outOfRange() {
+        assertFalse(directory.claim("a", 256, 0));
+        assertFalse(directory.claim("a", 0, 16));
+        assertFalse(directory.claim("a", -1, 0));
+        assertNull(directory.get(0, -1));
+        assertEquals(-1, directory.next(256, -1, -1));
+    }
+
+    @Test
+    void next() {
+        directory.claim("a", 5, 0);
+        directory.claim("b", 5, 7);
+        directory.claim("c", 5, 15);
+        directory.claim("d", 6, 3);
+
+        assertEquals(0, directory.next(5, -1, -1));
+        assertEquals(7, directory.next(5, 0, -1));
+        assertEquals(15, directory.next(5, 7, -1));
+        assertEquals(-1, directory.next(5, 15, -1));
+
+        // Skip the portal dialling
+        assertEquals(15, directory.next(5, 0, 7));
+        assertEquals(7, directory.next(5, -1, 0));
+
+        assertEquals(3, directory.next(6, -1, -1));
+        assertEquals(-1, directory.next(7, -1, -1));
+    }
+
+    @Test
+    void fullWidthNetwork() {
+        AddressDirectory<Integer> wide = new AddressDirectory<>(1, 32);
+        for (int address = 0; address < 32; address++) {
+            assertTrue(wide.claim(address, 0, address));
+        }
+        assertEquals(31, wide.next(0, 30, -1));
+        assertEquals(-1, wide.next(0, 31, -1));
+
+        assertThrows(IllegalArgumentException.class, () -> new AddressDirectory<>(1, 33));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockKeyTest {
+    // World border and build height limits
+    private static final int[] XZ = {-30000000, -33554432, -1, 0, 1, 15, 16, 29999999, 33554431};
+    private static final int[] Y = {-2048, -64, -1, 0, 1, 319, 2047};
+
+    @Test
+    void roundTrip() {
+        for (int x : XZ) {
+            for (int y : Y) {
+                for (int z : XZ) {
+                    long key = BlockKey.pack(x, y, z);
+                    assertEquals(x, BlockKey.getX(key));
+                    assertEquals(y, BlockKey.getY(key));
+                    assertEquals(z, BlockKey.getZ(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    void neighboursAreDistinct() {
+        Set<Long> keys = new HashSet<>();
+        for (int x = -2; x <= 2; x++) {
+            for (int y = -2; y <= 2; y++) {
+                for (int z = -2; z <= 2; z++) {
+                    assertTrue(keys.add(BlockKey.pack(x, y, z)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FindCrossedTest {
+    private final WorldPortalIndex<String> index = new WorldPortalIndex<>(portal -> true);
+
+    private void portal(String name, int x, int y, int z) {
+        index.add(BlockKey.pack(x, y, z), name, WorldPortalIndex.PORTAL);
+    }
+
+    private String crossed(double fromX, double fromY, double fromZ, double toX, double toY, double toZ) {
+        return index.findCrossed(fromX, fromY, fromZ, toX, toY, toZ, 0, WorldPortalIndex.PORTAL, 128);
+    }
+
+    @Test
+    void fastMoverCannotSkipPortal() {
+        portal("a", 5, 64, 0);
+        assertEquals("a", crossed(0.5, 64.5, 0.5, 10.5, 64.5, 0.5));
+        assertEquals("a", crossed(10.5, 64.5, 0.5, 0.5, 64.5, 0.5));
+    }
+
+    @Test
+    void pathEndingShort() {
+        portal("a", 5, 64, 0);
+        assertNull(crossed(0.5, 64.5, 0.5, 4.9, 64.5, 0.5));
+        assertEquals("a", crossed(0.5, 64.5, 0.5, 5.0, 64.5, 0.5));
+    }
+
+    @Test
+    void stationaryChecksStartBlock() {
+        portal("a", 0, 64, 0);
+        assertEquals("a", crossed(0.5, 64.5, 0.5, 0.5, 64.5, 0.5));
+    }
+
+    @Test
+    void diagonalVisitsEveryBlockOnPath() {
+        // From (0.2, 0.2) to (3.8, 2.2) passes through (1, 0), (1, 1), (2, 1), (3, 1) and (3, 2) but not (0, 1)
+        portal("off", 0, 64, 1);
+        assertNull(crossed(0.2, 64.5, 0.2, 3.8, 64.5, 2.2));
+
+        portal("on", 2, 64, 1);
+        assertEquals("on", crossed(0.2, 64.5, 0.2, 3.8, 64.5, 2.2));
+    }
+
+    @Test
+    void reachExtendsPath() {
+        portal("a", 5, 64, 0);
+        assertNull(crossed(0.5, 64.5, 0.5, 4.7, 64.5, 0.5));
+        assertEquals("a", index.findCrossed(0.5, 64.5, 0.5, 4.7, 64.5, 0.5, 0.5, WorldPortalIndex.PORTAL, 128));
+    }
+
+    @Test
+    void vertical() {
+        portal("a", 0, 60, 0);
+        assertEquals("a", crossed(0.5, 70.5, 0.5, 0.5, 50.5, 0.5));
+        assertNull(crossed(0.5, 70.5, 0.5, 0.5, 61.0, 0.5));
+    }
+
+    @Test
+    void nearestPortalFirst() {
+        portal("far", 8, 64, 0);
+        portal("near", 3, 64, 0);
+        assertEquals("near", crossed(0.5, 64.5, 0.5, 10.5, 64.5, 0.5));
+        assertEquals("far", crossed(10.5, 64.5, 0.5, 0.5, 64.5, 0.5));
+    }
+
+    @Test
+    void negativeCoordinates() {
+        portal("a", -3, 64, -3);
+        assertEquals("a", crossed(-0.5, 64.5, -0.5, -5.5, 64.5, -5.5));
+    }
+
+    @Test
+    void onlyRequestedRoles() {
+        index.add(BlockKey.pack(5, 64, 0), "a", WorldPortalIndex.FRAME);
+        assertNull(crossed(0.5, 64.5, 0.5, 10.5, 64.5, 0.5));
+        assertEquals("a", index.findCrossed(0.5, 64.5, 0.5, 10.5, 64.5, 0.5, 0, WorldPortalIndex.STRUCTURE, 128));
+    }
+
+    @Test
+    void limitedToMaxBlocks() {
+        portal("a", 20, 64, 0);
+        assertNull(index.findCrossed(0.5, 64.5, 0.5, 30.5, 64.5, 0.5, 0, WorldPortalIndex.PORTAL, 10));
+        assertEquals("a", index.findCrossed(0.5, 64.5, 0.5, 30.5, 64.5, 0.5, 0, WorldPortalIndex.PORTAL, 21));
+    }
+}
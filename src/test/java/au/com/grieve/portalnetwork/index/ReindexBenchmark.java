@@ -0,0 +1,105 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import org.bukkit.util.BoundingBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reindexing one portal as the number of portals in the world grows. Only the portal's own blocks are visited
+ * so the cost of reindexing the same portal stays flat. Cycling through every portal also measures cache misses once
+ * the index no longer fits in cache.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main ReindexBenchmark} after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReindexBenchmark {
+    // A 4x5 portal: frame, inside, base and portal block
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 5;
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int portals;
+
+    private WorldPortalIndex<Object> index;
+    private Object[] portal;
+    private int next;
+
+    @Setup
+    public void setup() {
+        index = new WorldPortalIndex<>(p -> true);
+        portal = new Object[portals];
+        for (int i = 0; i < portals; i++) {
+            portal[i] = new Object();
+            add(i);
+        }
+    }
+
+    @Benchmark
+    public int reindex() {
+        index.removePortal(portal[0]);
+        add(0);
+        return index.size();
+    }
+
+    @Benchmark
+    public int reindexEach() {
+        int i = next;
+        next = (next + 1) % portals;
+
+        index.removePortal(portal[i]);
+        add(i);
+        return index.size();
+    }
+
+    // Portals are spread over a grid, one per chunk
+    private void add(int i) {
+        Object p = portal[i];
+        int x = (i % 256) * 16;
+        int z = (i / 256) * 16;
+        int y = 64;
+
+        index.add(BlockKey.pack(x, y, z), p, WorldPortalIndex.BLOCK);
+        for (int dx = 0; dx < WIDTH; dx++) {
+            index.add(BlockKey.pack(x + dx, y, z + 1), p, WorldPortalIndex.BASE);
+            for (int dy = 1; dy <= HEIGHT; dy++) {
+                boolean frame = dx == 0 || dx == WIDTH - 1 || dy == HEIGHT;
+                index.add(BlockKey.pack(x + dx, y + dy, z + 1), p, frame ? WorldPortalIndex.FRAME : WorldPortalIndex.PORTAL);
+            }
+        }
+        index.setBounds(p, new BoundingBox(x, y, z, x + WIDTH, y + HEIGHT + 1, z + 2));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.index;
+
+import org.bukkit.util.BoundingBox;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorldPortalIndexTest {
+    private final Set<String> invalid = new HashSet<>();
+    private final WorldPortalIndex<String> index = new WorldPortalIndex<>(portal -> !invalid.contains(portal));
+
+    @Test
+    void rolesAccumulate() {
+        long key = BlockKey.pack(1, 64, 1);
+        index.add(key, "a", WorldPortalIndex.FRAME);
+        index.add(key, "a", WorldPortalIndex.BASE);
+
+        assertEquals("a", index.get(key, WorldPortalIndex.FRAME));
+        assertEquals("a", index.get(key, WorldPortalIndex.BASE));
+        assertEquals("a", index.get(key, WorldPortalIndex.STRUCTURE));
+        assertNull(index.get(key, WorldPortalIndex.PORTAL));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void removeOnlyTouchesOwnBlocks() {
+        long shared = BlockKey.pack(0, 64, 0);
+        long own = BlockKey.pack(1, 64, 0);
+        index.add(shared, "a", WorldPortalIndex.FRAME);
+        index.add(own, "a", WorldPortalIndex.FRAME);
+
+        // Another portal takes over a block
+        index.add(shared, "b", WorldPortalIndex.PORTAL);
+
+        index.removePortal("a");
+        assertNull(index.get(own, WorldPortalIndex.FRAME));
+        assertEquals("b", index.get(shared, WorldPortalIndex.PORTAL));
+        assertEquals(1, index.size());
+
+        index.removePortal("b");
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void reindexReplacesBlocks() {
+        index.add(BlockKey.pack(0, 64, 0), "a", WorldPortalIndex.BLOCK);
+        index.removePortal("a");
+        index.add(BlockKey.pack(100, 64, 0), "a", WorldPortalIndex.BLOCK);
+
+        assertNull(index.get(BlockKey.pack(0, 64, 0), WorldPortalIndex.BLOCK));
+        assertEquals("a", index.get(BlockKey.pack(100, 64, 0), WorldPortalIndex.BLOCK));
+        assertFalse(index.hasPortals(0, 0));
+        assertTrue(index.hasPortals(6, 0));
+    }
+
+    @Test
+    void boundsAreBucketedByChunk() {
+        // Spans chunks 0 and 1 on x
+        index.setBounds("a", new BoundingBox(10, 60, 0, 20, 70, 5));
+
+        assertTrue(index.hasPortals(0, 0));
+        assertTrue(index.hasPortals(1, 0));
+        assertFalse(index.hasPortals(2, 0));
+
+        assertSame("a", index.findWithin(18, 65, 2, 18, 65, 2, null));
+        assertNull(index.findWithin(21, 65, 2, 30, 65, 2, null));
+
+        // Moving the bounds forgets the old chunks
+        index.setBounds("a", new BoundingBox(100, 60, 0, 101, 70, 1));
+        assertFalse(index.hasPortals(0, 0));
+        assertTrue(index.hasPortals(6, 0));
+
+        index.removePortal("a");
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void findWithinFiltersOnValid() {
+        index.setBounds("a", new BoundingBox(0, 0, 0, 4, 4, 4));
+        invalid.add("a");
+
+        assertNull(index.findWithin(1, 1, 1, 1, 1, 1, true));
+        assertSame("a", index.findWithin(1, 1, 1, 1, 1, 1, false));
+        assertSame("a", index.findWithin(1, 1, 1, 1, 1, 1, null));
+    }
+}
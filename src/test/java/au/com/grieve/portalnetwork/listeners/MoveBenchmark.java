@@ -0,0 +1,135 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.listeners;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import au.com.grieve.portalnetwork.index.WorldPortalIndex;
+import au.com.grieve.portalnetwork.transit.IgnoredEntities;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.util.BoundingBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks {@link MoveEvents} makes for a player move that does not enter a portal, which should not allocate
+ * <p>
+ * The listener itself needs a running server so the same steps are replayed against the same classes: the ignore
+ * check, the block change check, the world index lookup, the chunk check and the walk along the path. Players either
+ * walk where there are no portals, or beside a portal so the path is walked too.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main MoveBenchmark -prof gc} after
+ * {@code mvn test-compile} and check that gc.alloc.rate.norm is 0.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+    // Sprinting speed in blocks per tick
+    private static final double STEP = 0.28;
+
+    @Param({"away", "beside"})
+    public String path;
+
+    private final IgnoredEntities ignore = new IgnoredEntities();
+    private final Map<UUID, WorldPortalIndex<Object>> worldIndexes = new HashMap<>();
+    private final UUID world = new UUID(1, 1);
+
+    private Entity player;
+    private Location[] steps;
+    private int step;
+
+    @Setup
+    public void setup() {
+        // A portal in every chunk along x, its inside in the plane z = 8
+        WorldPortalIndex<Object> index = new WorldPortalIndex<>(p -> true);
+        for (int chunk = 0; chunk < 8; chunk++) {
+            Object portal = new Object();
+            int x = chunk * 16 + 4;
+            for (int dx = 0; dx < 4; dx++) {
+                for (int y = 64; y < 69; y++) {
+                    index.add(BlockKey.pack(x + dx, y, 8), portal, WorldPortalIndex.PORTAL);
+                }
+            }
+            index.setBounds(portal, new BoundingBox(x - 1, 63, 8, x + 5, 70, 9));
+        }
+        worldIndexes.put(world, index);
+
+        // Other players that recently used a portal
+        for (int id = 1000; id < 1100; id++) {
+            ignore.add(entity(id), new Location(null, 0, 64, 0));
+        }
+        player = entity(1);
+
+        // Walk along x, beside the portals at z = 6.5 or in chunks without portals at z = 200.5
+        double z = path.equals("beside") ? 6.5 : 200.5;
+        steps = new Location[(int) (96 / STEP)];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = new Location(null, 16 + i * STEP, 64, z);
+        }
+    }
+
+    private static Entity entity(int id) {
+        return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[]{Entity.class},
+                (proxy, method, args) -> method.getName().equals("getEntityId") ? id : null);
+    }
+
+    @Benchmark
+    public Object move() {
+        Location from = steps[step];
+        Location to = steps[step + 1];
+        step = (step + 1) % (steps.length - 1);
+
+        if (ignore.check(player, to, 2)) {
+            return null;
+        }
+
+        if (from.getBlockX() == to.getBlockX() && from.getBlockY() == to.getBlockY() && from.getBlockZ() == to.getBlockZ()) {
+            return null;
+        }
+
+        WorldPortalIndex<Object> index = worldIndexes.get(world);
+        if (index == null || !index.hasPortals(Math.min(from.getBlockX(), to.getBlockX()) - 1,
+                Math.min(from.getBlockZ(), to.getBlockZ()) - 1, Math.max(from.getBlockX(), to.getBlockX()) + 1,
+                Math.max(from.getBlockZ(), to.getBlockZ()) + 1)) {
+            return null;
+        }
+
+        return index.findCrossed(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ(), 0.2,
+                WorldPortalIndex.PORTAL, 128);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.index.BlockKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryPortalFileTest {
+    @TempDir
+    File folder;
+
+    @Test
+    void roundTrip() throws IOException {
+        List<PortalData> data = TestPortals.portals(100);
+        assertEquals(data, BinaryPortalFile.read(BinaryPortalFile.encode(data)));
+    }
+
+    @Test
+    void roundTripEmpty() throws IOException {
+        assertTrue(BinaryPortalFile.read(BinaryPortalFile.encode(List.of())).isEmpty());
+    }
+
+    @Test
+    void roundTripParallel() throws IOException {
+        // Large enough to be decoded in several slices
+        List<PortalData> data = TestPortals.portals(20000);
+        assertEquals(data, BinaryPortalFile.read(BinaryPortalFile.encode(data)));
+    }
+
+    @Test
+    void writeReplacesFile() throws IOException {
+        File file = new File(folder, "portal-data.dat");
+        BinaryPortalFile.write(file, TestPortals.portals(50));
+        BinaryPortalFile.write(file, TestPortals.portals(10));
+
+        assertEquals(TestPortals.portals(10), BinaryPortalFile.read(file));
+        assertFalse(new File(folder, "portal-data.dat.tmp").exists());
+    }
+
+    @Test
+    void readVersion1() throws IOException {
+        PortalData portal = TestPortals.portal(2);
+        byte[] type = portal.getType().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        buffer.putInt(BinaryPortalFile.MAGIC);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) type.length);
+        buffer.put(type);
+        buffer.putInt(1);
+        buffer.putLong(portal.getWorld().getMostSignificantBits());
+        buffer.putLong(portal.getWorld().getLeastSignificantBits());
+        buffer.putLong(BlockKey.pack(portal.getX(), portal.getY(), portal.getZ()));
+        buffer.putShort((short) 0);
+        buffer.putFloat(portal.getYaw());
+        buffer.putFloat(portal.getPitch());
+        buffer.putShort(portal.getNetwork().shortValue());
+        buffer.put(portal.getAddress().byteValue());
+        buffer.put((byte) -1);
+        buffer.put((byte) 1);
+        buffer.flip();
+
+        List<PortalData> data = BinaryPortalFile.read(buffer);
+        assertEquals(1, data.size());
+
+        // Version 1 has no geometry
+        PortalData read = data.get(0);
+        assertNull(read.getGeometry());
+        assertNull(read.getDialled());
+        assertEquals(portal.getKey(), read.getKey());
+        assertEquals(portal.getNetwork(), read.getNetwork());
+        assertEquals(portal.getAddress(), read.getAddress());
+        assertTrue(read.isValid());
+    }
+
+    @Test
+    void rejectsOtherFiles() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(0x12345678);
+        buffer.flip();
+        assertThrows(IOException.class, () -> BinaryPortalFile.read(buffer));
+    }
+
+    @Test
+    void rejectsNewerVersion() {
+        ByteBuffer buffer = BinaryPortalFile.encode(TestPortals.portals(1));
+        buffer.putShort(4, (short) (BinaryPortalFile.VERSION + 1));
+        assertThrows(IOException.class, () -> BinaryPortalFile.read(buffer));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        File file = new File(folder, "portal-data.dat");
+        BinaryPortalFile.write(file, TestPortals.portals(10));
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+        assertThrows(IOException.class, () -> BinaryPortalFile.read(file));
+
+        Files.write(file.toPath(), Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> BinaryPortalFile.read(file));
+    }
+}
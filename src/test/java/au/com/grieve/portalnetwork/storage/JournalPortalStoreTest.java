@@ -0,0 +1,30 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import java.io.File;
+
+class JournalPortalStoreTest extends PortalStoreTest {
+    @Override
+    PortalStore create(File folder) {
+        // Small enough that larger flushes compact the journal and smaller ones append to it
+        return new FilePortalStore(new File(folder, PortalStores.DATA_FILE), new File(folder, PortalStores.JOURNAL_FILE),
+                true, 4096);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read portal data at startup for every store. Lazy stores only read the portals holding an address then, so
+ * reading everything is measured separately.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main LoadBenchmark} after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int portals;
+
+    @Param({PortalStores.FILE, SaveBenchmark.JOURNAL, PortalStores.YAML, PortalStores.SQLITE, PortalStores.REGION})
+    public String type;
+
+    private File folder;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("portalnetwork").toFile();
+        PortalStore store = SaveBenchmark.createStore(type, folder);
+        try {
+            store.upsert(TestPortals.portals(portals));
+            store.flush();
+        } finally {
+            store.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SaveBenchmark.delete(folder);
+    }
+
+    @Benchmark
+    public List<PortalData> startup() throws IOException {
+        PortalStore store = SaveBenchmark.createStore(type, folder);
+        try {
+            return store.isLazy() ? store.loadAddresses() : store.loadAll();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Benchmark
+    public List<PortalData> loadAll() throws IOException {
+        PortalStore store = SaveBenchmark.createStore(type, folder);
+        try {
+            return store.loadAll();
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortalChangesTest {
+    private static Map<PortalKey, PortalData> written(List<PortalData> data) {
+        Map<PortalKey, PortalData> written = new HashMap<>();
+        for (PortalData portal : data) {
+            written.put(portal.getKey(), portal);
+        }
+        return written;
+    }
+
+    @Test
+    void nothingChanged() {
+        List<PortalData> data = TestPortals.portals(10);
+        PortalChanges changes = PortalChanges.between(written(data), TestPortals.portals(10));
+
+        assertTrue(changes.isEmpty());
+        assertEquals(written(data), changes.getCurrent());
+    }
+
+    @Test
+    void addedChangedAndRemoved() {
+        List<PortalData> before = TestPortals.portals(10);
+
+        List<PortalData> after = new ArrayList<>(before);
+        PortalData removed = after.remove(3);
+        PortalData changed = TestPortals.redial(after.get(5));
+        after.set(5, changed);
+        PortalData added = TestPortals.portal(10);
+        after.add(added);
+
+        PortalChanges changes = PortalChanges.between(written(before), after);
+        assertEquals(List.of(changed, added), changes.getUpserts());
+        assertEquals(List.of(removed.getKey()), changes.getDeletes());
+        assertEquals(written(after), changes.getCurrent());
+    }
+
+    @Test
+    void firstWrite() {
+        List<PortalData> data = TestPortals.portals(3);
+        PortalChanges changes = PortalChanges.between(new HashMap<>(), data);
+
+        assertEquals(data, changes.getUpserts());
+        assertTrue(changes.getDeletes().isEmpty());
+    }
+
+    @Test
+    void everythingRemoved() {
+        List<PortalData> data = TestPortals.portals(3);
+        PortalChanges changes = PortalChanges.between(written(data), new ArrayList<>());
+
+        assertTrue(changes.getUpserts().isEmpty());
+        assertEquals(3, changes.getDeletes().size());
+        assertTrue(changes.getCurrent().isEmpty());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every store must share, run against each store by a subclass
+ * <p>
+ * Stores are reopened the way the manager uses them: read everything, then write changes.
+ */
+abstract class PortalStoreTest {
+    @TempDir
+    File folder;
+
+    private final List<PortalStore> opened = new ArrayList<>();
+
+    /**
+     * Create a store in a folder
+     */
+    abstract PortalStore create(File folder);
+
+    PortalStore open() throws IOException {
+        PortalStore store = create(folder);
+        opened.add(store);
+        if (store.exists()) {
+            store.loadAll();
+        }
+        return store;
+    }
+
+    @AfterEach
+    void closeStores() throws IOException {
+        for (PortalStore store : opened) {
+            store.close();
+        }
+    }
+
+    // Reopen the store and read everything in it, by key
+    Map<PortalKey, PortalData> reload() throws IOException {
+        PortalStore store = create(folder);
+        opened.add(store);
+        return byKey(store.loadAll());
+    }
+
+    static Map<PortalKey, PortalData> byKey(List<PortalData> data) {
+        Map<PortalKey, PortalData> result = new HashMap<>();
+        for (PortalData portal : data) {
+            assertNull(result.put(portal.getKey(), portal), "Duplicate portal " + portal.getKey());
+        }
+        return result;
+    }
+
+    @Test
+    void existsOnceWritten() throws IOException {
+        PortalStore store = open();
+        assertFalse(store.exists());
+
+        store.upsert(TestPortals.portals(1));
+        store.flush();
+        assertTrue(store.exists());
+        assertNotNull(store.getName());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        List<PortalData> data = TestPortals.portals(200);
+        PortalStore store = open();
+        store.upsert(data);
+        store.flush();
+        store.close();
+
+        assertEquals(byKey(data), reload());
+    }
+
+    @Test
+    void keepsGeometry() throws IOException {
+        PortalData portal = TestPortals.portal(2);
+        assertNotNull(portal.getGeometry());
+
+        PortalStore store = open();
+        store.upsert(List.of(portal));
+        store.flush();
+        store.close();
+
+        assertEquals(portal.getGeometry(), reload().get(portal.getKey()).getGeometry());
+    }
+
+    @Test
+    void upsertReplaces() throws IOException {
+        List<PortalData> data = TestPortals.portals(50);
+        PortalStore store = open();
+        store.upsert(data);
+        store.flush();
+        store.close();
+
+        store = open();
+        for (int i = 0; i < data.size(); i += 3) {
+            data.set(i, TestPortals.redial(data.get(i)));
+            store.upsert(List.of(data.get(i)));
+        }
+        store.flush();
+        store.close();
+
+        assertEquals(byKey(data), reload());
+    }
+
+    @Test
+    void delete() throws IOException {
+        List<PortalData> data = TestPortals.portals(50);
+        PortalStore store = open();
+        store.upsert(data);
+        store.flush();
+        store.close();
+
+        store = open();
+        List<PortalKey> deleted = new ArrayList<>();
+        for (int i = 0; i < 50; i += 2) {
+            deleted.add(data.get(i).getKey());
+        }
+
+        // Deleting a portal that was never stored is harmless
+        deleted.add(TestPortals.portal(1000).getKey());
+        store.delete(deleted);
+        store.flush();
+        store.close();
+
+        Map<PortalKey, PortalData> expected = byKey(data);
+        deleted.forEach(expected::remove);
+        assertEquals(expected, reload());
+    }
+
+    @Test
+    void deleteThenAddAgain() throws IOException {
+        PortalData portal = TestPortals.portal(1);
+        PortalStore store = open();
+        store.upsert(List.of(portal));
+        store.flush();
+
+        store.delete(List.of(portal.getKey()));
+        store.flush();
+        store.upsert(List.of(TestPortals.redial(portal)));
+        store.flush();
+        store.close();
+
+        assertEquals(byKey(List.of(TestPortals.redial(portal))), reload());
+    }
+
+    @Test
+    void manyFlushes() throws IOException {
+        List<PortalData> data = TestPortals.portals(100);
+        PortalStore store = open();
+        for (PortalData portal : data) {
+            store.upsert(List.of(portal));
+            store.flush();
+        }
+        for (int i = 0; i < 100; i += 4) {
+            store.delete(List.of(data.get(i).getKey()));
+            store.flush();
+        }
+        store.close();
+
+        Map<PortalKey, PortalData> expected = byKey(data);
+        for (int i = 0; i < 100; i += 4) {
+            expected.remove(data.get(i).getKey());
+        }
+        assertEquals(expected, reload());
+    }
+
+    @Test
+    void loadAllAfterFlush() throws IOException {
+        List<PortalData> data = TestPortals.portals(20);
+        PortalStore store = open();
+        store.upsert(data);
+        store.flush();
+
+        assertEquals(byKey(data), byKey(store.loadAll()));
+    }
+
+    @Test
+    void flushWithoutChanges() throws IOException {
+        PortalStore store = open();
+        store.flush();
+        store.upsert(TestPortals.portals(5));
+        store.flush();
+        store.flush();
+        store.close();
+
+        assertEquals(byKey(TestPortals.portals(5)), reload());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionPortalStoreTest extends PortalStoreTest {
+    @Override
+    PortalStore create(File folder) {
+        return new RegionPortalStore(new File(folder, PortalStores.REGION_FOLDER));
+    }
+
+    private static boolean addressed(PortalData portal) {
+        return portal.isValid() && portal.getNetwork() != null && portal.getAddress() != null;
+    }
+
+    private List<PortalData> write(int count) throws IOException {
+        List<PortalData> data = TestPortals.portals(count);
+        PortalStore store = open();
+        store.upsert(data);
+        store.flush();
+        store.close();
+        return data;
+    }
+
+    @Test
+    void loadAddresses() throws IOException {
+        List<PortalData> data = write(200);
+
+        PortalStore store = open();
+        assertTrue(store.isLazy());
+        assertEquals(byKey(data.stream().filter(RegionPortalStoreTest::addressed).collect(Collectors.toList())),
+                byKey(store.loadAddresses()));
+    }
+
+    @Test
+    void loadChunkReadsItsRegion() throws IOException {
+        List<PortalData> data = write(200);
+        PortalData portal = data.get(0);
+        int chunkX = portal.getX() >> 4;
+        int chunkZ = portal.getZ() >> 4;
+
+        PortalStore store = create(folder);
+        assertTrue(store.markRead(portal.getWorld(), chunkX, chunkZ));
+        assertFalse(store.markRead(portal.getWorld(), chunkX, chunkZ));
+
+        // Other chunks of the same 32x32 chunk region were read with it
+        assertFalse(store.markRead(portal.getWorld(), chunkX | 31, chunkZ | 31));
+
+        Map<PortalKey, PortalData> expected = byKey(data.stream()
+                .filter(p -> p.getWorld().equals(portal.getWorld())
+                        && p.getX() >> 9 == portal.getX() >> 9 && p.getZ() >> 9 == portal.getZ() >> 9)
+                .collect(Collectors.toList()));
+        assertEquals(expected, byKey(store.loadChunk(portal.getWorld(), chunkX, chunkZ)));
+        store.close();
+    }
+
+    @Test
+    void addressIndexFollowsChanges() throws IOException {
+        List<PortalData> data = write(50);
+
+        PortalStore store = open();
+        PortalData addressed = data.get(1);
+        PortalData unaddressed = data.get(7);
+        store.delete(List.of(addressed.getKey()));
+        store.upsert(List.of(TestPortals.portal(1000)));
+        store.flush();
+        store.close();
+
+        Map<PortalKey, PortalData> addresses = byKey(create(folder).loadAddresses());
+        assertFalse(addresses.containsKey(addressed.getKey()));
+        assertFalse(addresses.containsKey(unaddressed.getKey()));
+        assertTrue(addresses.containsKey(TestPortals.portal(1000).getKey()));
+    }
+
+    @Test
+    void addressIndexRebuiltIfMissing() throws IOException {
+        List<PortalData> data = write(100);
+        File index = new File(new File(folder, PortalStores.REGION_FOLDER), "addresses.dat");
+        assertTrue(index.delete());
+
+        Map<PortalKey, PortalData> expected = byKey(data.stream().filter(RegionPortalStoreTest::addressed)
+                .collect(Collectors.toList()));
+        assertEquals(expected, byKey(create(folder).loadAddresses()));
+        assertTrue(index.exists());
+    }
+}
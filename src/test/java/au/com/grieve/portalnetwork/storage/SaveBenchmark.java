@@ -0,0 +1,117 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.config.StorageConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of a save that changes one portal, as the saver thread does it: diff the snapshot against what was
+ * written, then delete, upsert and flush. Compares every store.
+ * <p>
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main SaveBenchmark} after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveBenchmark {
+    // The file store in journal mode
+    static final String JOURNAL = "journal";
+
+    @Param({"1000", "10000", "50000"})
+    public int portals;
+
+    @Param({PortalStores.FILE, SaveBenchmark.JOURNAL, PortalStores.YAML, PortalStores.SQLITE, PortalStores.REGION})
+    public String type;
+
+    private File folder;
+    private PortalStore store;
+    private List<PortalData> data;
+    private Map<PortalKey, PortalData> written;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("portalnetwork").toFile();
+        store = createStore(type, folder);
+        data = TestPortals.portals(portals);
+
+        PortalChanges changes = PortalChanges.between(Map.of(), data);
+        store.upsert(changes.getUpserts());
+        store.flush();
+        written = changes.getCurrent();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        delete(folder);
+    }
+
+    static PortalStore createStore(String type, File folder) {
+        boolean journal = type.equals(JOURNAL);
+        String storeType = journal ? PortalStores.FILE : type;
+        return PortalStores.create(storeType, folder, new StorageConfig(storeType, 20, journal, 1024, 5));
+    }
+
+    static void delete(File folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public PortalChanges saveOneChange() throws IOException {
+        int i = next;
+        next = (next + 1) % portals;
+        data.set(i, TestPortals.redial(data.get(i)));
+
+        PortalChanges changes = PortalChanges.between(written, data);
+        store.delete(changes.getDeletes());
+        store.upsert(changes.getUpserts());
+        store.flush();
+        written = changes.getCurrent();
+        return changes;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.storage;
+
+import au.com.grieve.portalnetwork.portals.PortalGeometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Portal data for tests and benchmarks
+ */
+final class TestPortals {
+    static final UUID OVERWORLD = new UUID(1, 1);
+    static final UUID NETHER = new UUID(2, 2);
+
+    private TestPortals() {
+    }
+
+    /**
+     * Return a portal that varies with i, covering missing addresses, dials and geometry and spread over both worlds
+     * and many regions
+     */
+    static PortalData portal(int i) {
+        UUID world = i % 5 == 0 ? NETHER : OVERWORLD;
+        int x = (i % 200) * 37 - 3000;
+        int z = (i / 200) * 41 - 3000;
+        boolean valid = i % 7 != 0;
+        Integer network = valid ? (i / 16) % 256 : null;
+        Integer address = valid ? i % 16 : null;
+        Integer dialled = valid && i % 3 == 0 ? (i + 1) % 16 : null;
+        PortalGeometry geometry = valid && i % 2 == 0
+                ? new PortalGeometry(network, address, -1, 0, 2, 0, i * 31) : null;
+        return new PortalData(i % 4 == 0 ? "end" : "nether", world, x, 64 + i % 100 - 50, z,
+                (i % 4) * 90f, 0f, network, address, dialled, valid, geometry);
+    }
+
+    static List<PortalData> portals(int count) {
+        List<PortalData> data = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            data.add(portal(i));
+        }
+        return data;
+    }
+
+    /**
+     * Return a copy of a portal dialled somewhere else
+     */
+    static PortalData redial(PortalData portal) {
+        Integer dialled = portal.getDialled() == null ? 0 : (portal.getDialled() + 1) % 16;
+        return portal.withDialled(dialled);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoredEntitiesTest {
+    private final IgnoredEntities ignore = new IgnoredEntities();
+
+    private static Entity entity(int id) {
+        return (Entity) Proxy.newProxyInstance(Entity.class.getClassLoader(), new Class<?>[]{Entity.class},
+                (proxy, method, args) -> method.getName().equals("getEntityId") ? id : null);
+    }
+
+    private static Location at(double x) {
+        return new Location(null, x, 64, 0);
+    }
+
+    private void sweep(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            ignore.sweep();
+        }
+    }
+
+    @Test
+    void ignoredUntilMovedAway() {
+        Entity entity = entity(1);
+        ignore.add(entity, at(0));
+
+        assertTrue(ignore.check(entity, at(1), 2));
+        assertFalse(ignore.check(entity(2), at(0), 2));
+
+        // The move away is still ignored, the next is not
+        assertTrue(ignore.check(entity, at(3), 2));
+        assertFalse(ignore.check(entity, at(3), 2));
+    }
+
+    @Test
+    void expiresAfterLifetime() {
+        Entity entity = entity(1);
+        ignore.add(entity, at(0));
+
+        sweep(IgnoredEntities.LIFETIME - 1);
+        assertEquals(1, ignore.size());
+        sweep(1);
+        assertEquals(0, ignore.size());
+        assertFalse(ignore.check(entity, at(0), 2));
+    }
+
+    @Test
+    void ignoredAgainKeepsNewerEntry() {
+        Entity entity = entity(1);
+        ignore.add(entity, at(0));
+        sweep(10);
+        ignore.add(entity, at(0));
+
+        sweep(IgnoredEntities.LIFETIME - 10);
+        assertTrue(ignore.check(entity, at(0), 2));
+        sweep(10);
+        assertEquals(0, ignore.size());
+    }
+
+    @Test
+    void sweepsABatchPerTick() {
+        for (int id = 0; id < IgnoredEntities.SWEEP_BATCH * 2; id++) {
+            ignore.add(entity(id), at(0));
+        }
+
+        sweep(IgnoredEntities.LIFETIME);
+        assertEquals(IgnoredEntities.SWEEP_BATCH, ignore.size());
+        sweep(1);
+        assertEquals(0, ignore.size());
+    }
+
+    @Test
+    void capacityDropsOldest() {
+        for (int id = 0; id < IgnoredEntities.CAPACITY + 10; id++) {
+            ignore.add(entity(id), at(0));
+        }
+
+        assertEquals(IgnoredEntities.CAPACITY, ignore.size());
+        assertFalse(ignore.check(entity(0), at(0), 2));
+        assertTrue(ignore.check(entity(IgnoredEntities.CAPACITY + 9), at(0), 2));
+    }
+}
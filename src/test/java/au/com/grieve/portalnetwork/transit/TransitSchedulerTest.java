@@ -0,0 +1,182 @@
+/*
+ * PortalNetwork - Portals for Players
+ * Copyright (C) 2023 PortalNetwork Developers
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package au.com.grieve.portalnetwork.transit;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransitSchedulerTest {
+    // Timers in the order the server runs them each tick
+    private final List<Runnable> timers = new ArrayList<>();
+    private final List<Runnable> cancelled = new ArrayList<>();
+
+    // What the entities were asked to do, in order
+    private final List<String> log = new ArrayList<>();
+
+    private final TransitScheduler scheduler = new TransitScheduler(plugin());
+
+    private <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private Plugin plugin() {
+        BukkitScheduler bukkitScheduler = proxy(BukkitScheduler.class, (p, method, args) -> {
+            assertEquals("runTaskTimer", method.getName());
+            Runnable timer = (Runnable) args[1];
+            timers.add(timer);
+            return proxy(BukkitTask.class, (t, m, a) -> {
+                assertEquals("cancel", m.getName());
+                cancelled.add(timer);
+                return null;
+            });
+        });
+        Server server = proxy(Server.class, (p, method, args) -> bukkitScheduler);
+        return proxy(Plugin.class, (p, method, args) -> server);
+    }
+
+    private Entity entity(String name) {
+        return proxy(Entity.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "isValid":
+                    return true;
+                case "setVelocity":
+                    log.add(name + " velocity");
+                    return null;
+                case "addPassenger":
+                    log.add(name + " carries " + args[0]);
+                    return true;
+                case "toString":
+                    return name;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    // Run one server tick, calling before first as a task created before the scheduler's would be
+    private void tick(Runnable before) {
+        before.run();
+        for (Runnable timer : new ArrayList<>(timers)) {
+            if (!cancelled.contains(timer)) {
+                timer.run();
+            }
+        }
+    }
+
+    private void tick() {
+        tick(() -> {
+        });
+    }
+
+    @Test
+    void runsNextTick() {
+        scheduler.restoreVelocity(entity("cart"), new Vector(1, 0, 0));
+        assertTrue(log.isEmpty());
+
+        tick();
+        assertEquals(List.of("cart velocity"), log);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void stopsWhenEmpty() {
+        scheduler.restoreVelocity(entity("cart"), new Vector(1, 0, 0));
+        tick();
+        assertEquals(timers, cancelled);
+
+        // Starts again when more work is queued
+        scheduler.restoreVelocity(entity("boat"), new Vector(1, 0, 0));
+        assertEquals(2, timers.size());
+        tick();
+        assertEquals(List.of("cart velocity", "boat velocity"), log);
+    }
+
+    @Test
+    void neverRunsInTheTickItWasQueued() {
+        Entity cart = entity("cart");
+        Entity rider = entity("rider");
+
+        // Keep the task running, as it is while carts are busy
+        scheduler.restoreVelocity(cart, new Vector(1, 0, 0));
+        tick(() -> scheduler.remount(cart, List.of(rider), null));
+        assertEquals(List.of("cart velocity"), log);
+
+        tick();
+        assertEquals(List.of("cart velocity", "cart carries rider"), log);
+    }
+
+    @Test
+    void queuedDuringRun() {
+        Entity cart = entity("cart");
+        Entity rider = entity("rider");
+
+        // Mounting a passenger may teleport it, and that can queue more work from inside the run
+        Entity bouncer = proxy(Entity.class, (p, method, args) -> {
+            if (method.getName().equals("isValid")) {
+                return true;
+            }
+            if (method.getName().equals("addPassenger")) {
+                log.add("bouncer carries " + args[0]);
+                scheduler.restoreVelocity(cart, new Vector(1, 0, 0));
+                return true;
+            }
+            return null;
+        });
+        scheduler.remount(bouncer, List.of(rider), null);
+
+        tick();
+        assertEquals(List.of("bouncer carries rider"), log);
+        tick();
+        assertEquals(List.of("bouncer carries rider"), log);
+        tick();
+        assertEquals(List.of("bouncer carries rider", "cart velocity"), log);
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void noPassengers() {
+        scheduler.remount(entity("cart"), List.of(), null);
+        assertTrue(timers.isEmpty());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void skipsRemovedEntities() {
+        Entity gone = proxy(Entity.class, (p, method, args) -> method.getName().equals("isValid") ? false : null);
+        scheduler.restoreVelocity(gone, new Vector(1, 0, 0));
+        scheduler.remount(gone, List.of(entity("rider")), null);
+        tick();
+        tick();
+        assertTrue(log.isEmpty());
+        assertEquals(0, scheduler.size());
+    }
+}